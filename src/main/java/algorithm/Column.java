@@ -1,8 +1,9 @@
 package algorithm;
 
-import data.DataInstance;
 import data.TestRequest;
+import utils.TestIndex;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -13,22 +14,32 @@ import java.util.List;
 public class Column {
 
     protected double cost;
-    protected final List<Integer> seq;
+    protected final int[] seq; // dense test indices, see TestIndex
     protected final int release;
+    protected final long key; // 64-bit hash of seq and release
 
     public Column(List<Integer> seq, int release) {
-        this.seq = seq;
-        this.release = release;
-        this.cost = this.calacCost();
+        this(TestIndex.get().toIndices(seq), release);
     }
 
+    // seqIdx is kept as is and may be shared between columns, do not modify it afterwards
+    public Column(int[] seqIdx, int release) {
+        this(seqIdx, release, calcCost(seqIdx, release));
+    }
 
-    private double calacCost() {
-        int release = this.release;
+    // for subclasses with their own cost, which skip the default timing
+    protected Column(int[] seqIdx, int release, double cost) {
+        this.seq = seqIdx;
+        this.release = release;
+        this.key = calcKey(seqIdx, release);
+        this.cost = cost;
+    }
 
+    // total tardiness of the sequence when started at release
+    public static double calcCost(int[] seqIdx, int release) {
         double cost = 0;
-        for (int tid : this.seq) {
-            TestRequest test = DataInstance.getInstance().getTestById(tid);
+        for (int idx : seqIdx) {
+            TestRequest test = TestIndex.get().testAt(idx);
             if (release + test.getPrep() < test.getRelease()) {
                 release = test.getRelease() + test.getTat() + test.getAnalysis();
             } else {
@@ -41,11 +52,29 @@ public class Column {
         return cost;
     }
 
+    private static long calcKey(int[] seqIdx, int release) {
+        long h = mix(0, release);
+        for (int idx : seqIdx)
+            h = mix(h, idx);
+        return h;
+    }
+
+    // fold one value into a 64-bit hash
+    protected static long mix(long h, int value) {
+        h = (h ^ (value + 1)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
     public double getCost() {
         return cost;
     }
 
     public List<Integer> getSeq() {
+        return TestIndex.get().asTidList(seq);
+    }
+
+    // dense test indices of the sequence, shared with the column
+    public int[] getSeqIdx() {
         return seq;
     }
 
@@ -53,6 +82,10 @@ public class Column {
         return release;
     }
 
+    public long getKey() {
+        return key;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -60,26 +93,14 @@ public class Column {
 
         Column column = (Column) o;
 
+        if (key != column.key) return false;
         if (release != column.release) return false;
-        return seq != null ? sameSeq(seq, column.seq) : column.seq == null;
+        return Arrays.equals(seq, column.seq);
 
     }
 
-    private boolean sameSeq(List<Integer> seq1, List<Integer> seq2) {
-        if (seq1.size() != seq2.size())
-            return false;
-
-        for (int i = 0; i < seq1.size(); i++) {
-            if (seq1.get(i).intValue()!=seq2.get(i).intValue())
-                return false;
-        }
-        return true;
-    }
-
     @Override
     public int hashCode() {
-        int result = seq != null ? seq.hashCode() : 0;
-        result = 31 * result + release;
-        return result;
+        return (int) (key ^ (key >>> 32));
     }
 }
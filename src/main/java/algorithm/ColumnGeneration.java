@@ -1,14 +1,24 @@
 package algorithm;
 
+import algorithm.branching.BranchAndPrice;
+import algorithm.master.GurobiMaster;
+import algorithm.master.MasterSolver;
+import algorithm.pricer.AsyncPricer;
 import algorithm.pricer.CPOPricer;
+import algorithm.pricer.EnumPricer;
+import algorithm.pricer.LabelingPricer;
 import algorithm.pricer.Pricer;
+import algorithm.stabilization.DualStabilizer;
+import algorithm.stabilization.NoStabilizer;
 import data.DataInstance;
 import facility.ColumnWithTiming;
-import gurobi.*;
 import utils.Global;
+import utils.TestIndex;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Yuhui Shi - University of Michigan
@@ -17,232 +27,423 @@ import java.util.stream.Collectors;
 public class ColumnGeneration implements Algorithm{
 
 
-    private final Map<Column, GRBVar> varMap;
-    private final Map<Integer, GRBConstr> testCoverConstrs;
-    private final Map<Integer, GRBConstr> vehicleCapConstrs;
+    private final Map<Column, Integer> colIdx; // column handles in the master
+    private int[] testCoverRows; // test cover rows by dense test index
+    private final Map<Integer, Integer> vehicleCapRows;
+    private final Pricer pricer;
+    private Supplier<Pricer> exactPricerFactory;
+    private Supplier<MasterSolver> masterFactory;
+    private DualStabilizer stabilizer;
+    private double gapTolerance;
+    private double lowerBound;
+    private double pricingObj; // reduced cost of the last pricing round
+    private int maxColumnAge;
+    private int maxPoolSize;
+    private Supplier<Pricer> pipelinePricerFactory;
+    private Supplier<Pricer> branchPricerFactory;
+    private int branchThreads;
+    private long branchTimeLimit;
 
     public ColumnGeneration() {
-        testCoverConstrs = new HashMap<>();
-        vehicleCapConstrs = new HashMap<>();
-        varMap = new HashMap<>();
+        this(new CPOPricer());
+    }
+
+    // e.g. new CascadePricer(new HeuristicPricer(), new ReleaseSplitPricer(CPOPricer::new)) for heuristic
+    // pricing first and the CP pricers (one per release) only once the heuristic finds nothing
+    public ColumnGeneration(Pricer pricer) {
+        this.pricer = pricer;
+        exactPricerFactory = LabelingPricer::new;
+        vehicleCapRows = new HashMap<>();
+        colIdx = new HashMap<>();
+        masterFactory = GurobiMaster::new;
+        stabilizer = new NoStabilizer();
+        maxColumnAge = 0;
+        maxPoolSize = Integer.MAX_VALUE;
+    }
+
+    public void setStabilizer(DualStabilizer stabilizer) {
+        this.stabilizer = stabilizer;
+    }
+
+    // confirms convergence when the pricer finds nothing without being exact, LabelingPricer by default.
+    // Also used by branch-and-price.
+    public void setExactPricer(Supplier<Pricer> exactPricerFactory) {
+        this.exactPricerFactory = exactPricerFactory;
+    }
+
+    // LP engine of the restricted master, GurobiMaster by default. The integer solve falls back
+    // to Gurobi when the engine has no integer support.
+    public void setMasterSolver(Supplier<MasterSolver> masterFactory) {
+        this.masterFactory = masterFactory;
+    }
+
+    // stop column generation once (master obj - best Lagrangian bound) / master obj is below the tolerance,
+    // e.g. 0.001 for a 0.1% gap. 0 runs until no column prices out.
+    public void setGapTolerance(double gapTolerance) {
+        this.gapTolerance = gapTolerance;
+    }
+
+    // columns non-basic with positive reduced cost for maxAge iterations leave the master,
+    // which never holds more than maxSize columns on top of the basic ones. Off by default,
+    // a maxAge of 0 sets no age limit
+    public void setColumnPoolLimits(int maxAge, int maxSize) {
+        this.maxColumnAge = maxAge;
+        this.maxPoolSize = maxSize;
+    }
+
+    // price on a worker thread with pricerFactory.get(): the master re-optimizes with the columns of
+    // the running round as they arrive, and the main pricer only confirms convergence at the end
+    public void setPipelinedPricing(Supplier<Pricer> pricerFactory) {
+        this.pipelinePricerFactory = pricerFactory;
+    }
+
+    // solve the integer problem by branch-and-price instead of the restricted master MIP,
+    // with numThreads workers, each pricing with its own pricerFactory.get()
+    public void setBranchAndPrice(Supplier<Pricer> pricerFactory, int numThreads, long timeLimitMillis) {
+        this.branchPricerFactory = pricerFactory;
+        this.branchThreads = numThreads;
+        this.branchTimeLimit = timeLimitMillis;
+    }
+
+    // best Lagrangian bound on the LP relaxation seen by the last solve
+    public double getLowerBound() {
+        return lowerBound;
     }
 
     // enumerate initial set of columns
     public static List<Column> enumInitCol(int maxLevel) {
+        List<int[]> seqList = SequenceEnumerator.enumerate(maxLevel);
+        final List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
 
-        // enumerate the sequence first
-        List<List<Integer>> seqList = new ArrayList<>();
-        final List<List<Integer>> curr_lvl = new ArrayList<>();
-
-        int lvl = 1;
-        // the single ones
-        DataInstance.getInstance().getTidList()
-                .forEach(tid -> curr_lvl.add(Collections.singletonList(tid)));
-        seqList.addAll(curr_lvl);
-        System.out.printf("Level: %d, # seq: %d\n", lvl, curr_lvl.size());
-
-        while (lvl++ < maxLevel) {
-            List<List<Integer>> nxt_lvl = new ArrayList<>();
-            for (List<Integer> seq : curr_lvl) {
-                DataInstance.getInstance().getTidList().stream()
-                        .filter(tid -> DataInstance.isSeqCompWithTest(seq, tid)).forEach(tid -> {
-                    List<Integer> newSeq = new ArrayList<>(seq);
-                    newSeq.add(tid);
-                    nxt_lvl.add(newSeq);
-                });
-            }
-            if (nxt_lvl.size()==0)
-                break;
-            seqList.addAll(nxt_lvl);
-            System.out.printf("Level: %d, # seq: %d\n", lvl, nxt_lvl.size());
-            curr_lvl.clear(); curr_lvl.addAll(nxt_lvl);
-        }
-
-        System.out.printf("Total sequences: %d\n", seqList.size());
-        List<Column> colList = new ArrayList<>();
-        // pair with release to create columns
-        seqList.forEach(
-                seq -> DataInstance.getInstance().getVehicleReleaseList()
-                        .forEach(release -> colList.add(new Column(seq, release)))
-        );
-        return colList;
+        // pair with release to create columns, sharing one packed sequence between releases
+        return seqList.parallelStream()
+                .flatMap(seq -> releaseList.stream().map(release -> new Column(seq, release)))
+                .collect(Collectors.toList());
+    }
 
+    // same columns as enumInitCol, generated lazily one sequence at a time
+    public static Stream<Column> streamInitCol(int maxLevel) {
+        final List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+        return SequenceEnumerator.stream(maxLevel)
+                .flatMap(seq -> releaseList.stream().map(release -> new Column(seq, release)));
     }
 
     @Override
     public void solve() {
         List<Column> colList = enumInitCol(2);
 
-        try {
-            GRBEnv env = new GRBEnv();
-            GRBModel model = buildModel(env, colList);
-            model.getEnv().set(GRB.IntParam.OutputFlag, 0);
-
-            // change the variables type
-            for (GRBVar var : varMap.values()) {
-                var.set(GRB.CharAttr.VType, GRB.CONTINUOUS);
-                var.set(GRB.DoubleAttr.UB, GRB.INFINITY);
+        MasterSolver master = buildModel(masterFactory.get(), colList);
+        ColumnPool<Column> pool = new ColumnPool<>(maxColumnAge, maxPoolSize);
+        colList.forEach(pool::add);
+
+        AsyncPricer asyncPricer = pipelinePricerFactory == null ? null
+                : new AsyncPricer(pipelinePricerFactory.get());
+        Pricer exactPricer = null;
+        final int maxIter = 1000;
+        int iterTimes = 0;
+        lowerBound = Double.NEGATIVE_INFINITY;
+        pricingObj = Double.MAX_VALUE;
+        while (iterTimes++ < maxIter) {
+
+            if (!master.solve()) {
+                System.out.println("Restricted master has no optimal solution");
+                if (asyncPricer != null)
+                    asyncPricer.end();
+                if (exactPricer != null)
+                    exactPricer.end();
+                master.end();
+                return;
             }
-            model.update();
-
-            final int maxIter = 1000;
-            int iterTimes = 0;
-//            Pricer pricer = new JacopPricer();
-            Pricer pricer = new CPOPricer();
-//            Pricer pricer = new EnumPricer();
-            while (iterTimes++ < maxIter) {
-
-                model.optimize();
-                // grb dual information
-                Map<Integer, Double> testDual = new HashMap<>();
-                Map<Integer, Double> vehicleDual = new HashMap<>();
-                for (int tid : testCoverConstrs.keySet()) {
-                    testDual.put(tid,
-                            testCoverConstrs.get(tid).get(GRB.DoubleAttr.Pi));
-                }
-                for (int release : vehicleCapConstrs.keySet()) {
-                    vehicleDual.put(release,
-                            vehicleCapConstrs.get(release).get(GRB.DoubleAttr.Pi));
-                }
-
-                List<Column> candidates = pricer.price(testDual, vehicleDual);
-                System.out.printf("Iteration: %d, Master obj: %.3f, pricing obj: %.3f\n", iterTimes,
-                        model.get(GRB.DoubleAttr.ObjVal),
-                        pricer.getReducedCost());
-                if (candidates.size()==0)
-                    break;
-                // add the column to the master problem
-                for (Column col : candidates) {
-                    addOneCol(model, col, GRB.CONTINUOUS);
-                    colList.add(col);
-                }
-                model.update();
+            double[] masterDual = getMasterDual(master);
+            Map<Integer, Double> masterTestDual = testDualOf(masterDual);
+            Map<Integer, Double> masterVehicleDual = vehicleDualOf(masterDual);
+            double masterObj = master.getObjective();
+            pool.purge(master, colIdx, colList);
+
+            // archived columns that price out again come first
+            List<Column> candidates = pool.reprice(
+                    col -> EnumPricer.reducedCost(col, masterTestDual, masterVehicleDual));
+            if (asyncPricer != null && candidates.isEmpty())
+                candidates = collectAsync(asyncPricer, masterDual, masterTestDual, masterVehicleDual);
+            if (candidates.isEmpty())
+                candidates = priceStabilized(masterDual, masterTestDual, masterVehicleDual);
+            // an empty inexact round proves nothing, so the exact pricer decides convergence
+            if (candidates.isEmpty() && !pricer.isExact()) {
+                if (exactPricer == null)
+                    exactPricer = exactPricerFactory.get();
+                candidates = priceExact(exactPricer, masterDual, masterTestDual, masterVehicleDual);
+            }
+            double gap = (masterObj - lowerBound) / Math.max(Math.abs(masterObj), 1e-9);
+            System.out.printf("Iteration: %d, Master obj: %.3f, pricing obj: %.3f, lower bound: %.3f, " +
+                            "# cols: %d, # archived: %d\n", iterTimes,
+                    masterObj,
+                    pricingObj,
+                    lowerBound,
+                    pool.size(),
+                    pool.archiveSize());
+            if (candidates.size()==0)
+                break;
+            if (gap <= gapTolerance) {
+                System.out.printf("Gap %.4f%% within tolerance\n", gap * 100);
+                break;
             }
+            // add the column to the master problem
+            addCols(master, candidates);
+            colList.addAll(candidates);
+            candidates.forEach(pool::add);
+        }
+        System.out.println("Column generation iterations: " + Math.min(iterTimes, maxIter));
+        if (asyncPricer != null)
+            asyncPricer.end();
+        if (exactPricer != null)
+            exactPricer.end();
+
+        // the integer solve gets every column generated
+        List<Column> archived = pool.restoreAll();
+        addCols(master, archived);
+        colList.addAll(archived);
+
+        if (branchPricerFactory != null) {
+            master.end();
+            BranchAndPrice branchAndPrice = new BranchAndPrice(branchPricerFactory, branchThreads,
+                    branchTimeLimit);
+            branchAndPrice.setExactPricer(exactPricerFactory);
+            branchAndPrice.solve(colList);
+            printSolution(branchAndPrice.getSolution(), branchAndPrice.getObjective());
+            return;
+        }
+
+        // solve the integer value version
+        if (!master.supportsInteger()) {
+            master.end();
+            master = buildModel(new GurobiMaster(), colList);
+        }
+        master.setInteger(true);
+        printStats(master, colList);
+        master.end();
+    }
 
-            // solve the integer value version
-            for (GRBVar var : varMap.values()) {
-                var.set(GRB.CharAttr.VType, GRB.BINARY);
+    // price at the stabilized duals, keep what also prices out at the master duals
+    private List<Column> priceStabilized(double[] masterDual, Map<Integer, Double> masterTestDual,
+                                         Map<Integer, Double> masterVehicleDual) {
+        List<Column> candidates = new ArrayList<>();
+        double[] dual = stabilizer.stabilize(masterDual);
+        while (dual != null) {
+            List<Column> priced = pricer.price(testDualOf(dual), vehicleDualOf(dual));
+            pricingObj = pricer.getReducedCost();
+            // an inexact reduced cost overstates the bound and would pin the stabilization center
+            if (pricer.isExact()) {
+                double bound = lagrangianBound(dual, pricingObj);
+                stabilizer.update(dual, bound);
+                lowerBound = Math.max(lowerBound, bound);
             }
-            model.update();
-            model.optimize();
-            printStats(model, colList);
+            priced.stream()
+                    .filter(col -> EnumPricer.reducedCost(col, masterTestDual, masterVehicleDual) < -0.001)
+                    .forEach(candidates::add);
+            if (candidates.size() > 0)
+                break;
+            // mis-pricing, move towards the master duals
+            dual = stabilizer.misprice(masterDual);
+        }
+        return candidates;
+    }
 
+    // price at the master duals with a pricer that is exact whenever it finds nothing
+    private List<Column> priceExact(Pricer exactPricer, double[] masterDual, Map<Integer, Double> masterTestDual,
+                                    Map<Integer, Double> masterVehicleDual) {
+        List<Column> priced = exactPricer.price(masterTestDual, masterVehicleDual);
+        pricingObj = exactPricer.getReducedCost();
+        if (exactPricer.isExact())
+            lowerBound = Math.max(lowerBound, lagrangianBound(masterDual, pricingObj));
+        return priced.stream()
+                .filter(col -> EnumPricer.reducedCost(col, masterTestDual, masterVehicleDual) < -0.001)
+                .collect(Collectors.toList());
+    }
 
-        } catch (GRBException e) {
+    // start a round at the master duals if the worker is free, then take the columns queued by the
+    // worker that price out at the master duals, waiting while it is still busy. Empty once a round
+    // at these duals has ended without such columns.
+    private List<Column> collectAsync(AsyncPricer asyncPricer, double[] masterDual,
+                                      Map<Integer, Double> masterTestDual, Map<Integer, Double> masterVehicleDual) {
+        boolean submitted = false;
+        Set<Column> candidates = new LinkedHashSet<>();
+        try {
+            while (true) {
+                if (!submitted && !asyncPricer.isBusy()) {
+                    asyncPricer.submit(masterDual, masterTestDual, masterVehicleDual);
+                    submitted = true;
+                }
+                // the worker queues its columns before it is free
+                boolean done = submitted && !asyncPricer.isBusy();
+                AsyncPricer.Round round = asyncPricer.takeFinished();
+                if (round != null) {
+                    // any duals give a valid bound
+                    pricingObj = round.getReducedCost();
+                    if (round.isExact())
+                        lowerBound = Math.max(lowerBound, lagrangianBound(round.getDual(), pricingObj));
+                }
+                asyncPricer.takeColumns().stream()
+                        .filter(col -> !colIdx.containsKey(col))
+                        .filter(col -> EnumPricer.reducedCost(col, masterTestDual, masterVehicleDual) < -0.001)
+                        .forEach(candidates::add);
+                if (!candidates.isEmpty() || done)
+                    break;
+                asyncPricer.await();
+            }
+        } catch (InterruptedException e) {
             e.printStackTrace();
+            Thread.currentThread().interrupt();
         }
+        return new ArrayList<>(candidates);
     }
 
     public void solveFull() {
         // enumerate initial set of columns
         List<Column> colList = enumInitCol(Global.MAX_HITS);
 
-        try {
-            GRBEnv env = new GRBEnv();
-            GRBModel model = buildModel(env, colList);
-            model.optimize();
+        MasterSolver master = buildModel(new GurobiMaster(), colList);
+        master.setInteger(true);
+        master.setVerbose(true);
+        printStats(master, colList);
+        master.end();
+    }
 
-            printStats(model, colList);
+    private void printStats(MasterSolver master, List<Column> colList) {
+        if (master.solve())
+            printSolution(parseSol(master, colList), master.getObjective());
+    }
 
-        } catch (GRBException e) {
-            e.printStackTrace();
-        }
+    private void printSolution(List<Column> usedCols, double objVal) {
+        double tardiness = objVal - usedCols.size()*Global.VEHICLE_COST;
+        System.out.println("total tardiness: " + usedCols.stream().mapToDouble(Column::getCost).sum());
+
+        System.out.println("Used vehicles: " + usedCols.size());
+        System.out.println("Tardiness: " + tardiness);
+        System.out.println("Obj val: " + objVal);
+
+        // count the max activities on day
+        List<ColumnWithTiming> usedColTimed = usedCols.stream().map(c->new ColumnWithTiming(c.getSeq(), c.getRelease()))
+                .collect(Collectors.toList());
+        Map<Integer, Integer> activitiesOnDays = new HashMap<>();
+        usedColTimed.forEach(c-> {
+            int[] crashIntervals = c.getCrashIntervals();
+            for (int j = 0; j < crashIntervals.length; j += 2) {
+                for (int d = crashIntervals[j]; d < crashIntervals[j + 1]; d++)
+                    activitiesOnDays.merge(d, 1, Integer::sum);
+            }
+        });
+        // find the max
+        Integer maxDay = activitiesOnDays.keySet().stream()
+                .reduce((i, j) -> activitiesOnDays.get(i) > activitiesOnDays.get(j) ? i : j).orElse(-1);
+        System.out.println("max activities on day " + maxDay + ": " + activitiesOnDays.get(maxDay));
     }
 
-    private void printStats(GRBModel model, List<Column> colList) throws GRBException {
-        if (model.get(GRB.IntAttr.Status) == GRB.OPTIMAL) {
-            List<Column> usedCols = parseSol(colList);
-            double tardiness = model.get(GRB.DoubleAttr.ObjVal) - usedCols.size()*Global.VEHICLE_COST;
-            System.out.println("total tardiness: " + usedCols.stream().mapToDouble(Column::getCost).sum());
-
-            System.out.println("Used vehicles: " + usedCols.size());
-            System.out.println("Tardiness: " + tardiness);
-            System.out.println("Obj val: " + model.get(GRB.DoubleAttr.ObjVal));
-
-            // count the max activities on day
-            List<ColumnWithTiming> usedColTimed = usedCols.stream().map(c->new ColumnWithTiming(c.getSeq(), c.getRelease()))
-                    .collect(Collectors.toList());
-            Map<Integer, Integer> activitiesOnDays = new HashMap<>();
-            usedColTimed.forEach(c-> {
-                List<Integer> daysWithActivties = c.daysHasCrash();
-                for (int d : daysWithActivties) {
-                    if (activitiesOnDays.containsKey(d))
-                        activitiesOnDays.put(
-                                d,
-                                activitiesOnDays.get(d)+1
-                        );
-                    else
-                        activitiesOnDays.put(d,1);
-                }
-            });
-            // find the max
-            Integer maxDay = activitiesOnDays.keySet().stream()
-                    .reduce((i, j) -> activitiesOnDays.get(i) > activitiesOnDays.get(j) ? i : j).orElse(-1);
-            System.out.println("max activities on day " + maxDay + ": " + activitiesOnDays.get(maxDay));
+    // duals of the test cover rows (getTidList order) followed by the vehicle rows (getVehicleReleaseList order)
+    private double[] getMasterDual(MasterSolver master) {
+        List<Integer> tidList = DataInstance.getInstance().getTidList();
+        List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+        TestIndex index = TestIndex.get();
+        double[] rowDual = master.getDuals();
+        double[] dual = new double[tidList.size() + releaseList.size()];
+        for (int i = 0; i < tidList.size(); i++)
+            dual[i] = rowDual[testCoverRows[index.indexOf(tidList.get(i))]];
+        for (int r = 0; r < releaseList.size(); r++)
+            dual[tidList.size() + r] = rowDual[vehicleCapRows.get(releaseList.get(r))];
+        return dual;
+    }
+
+    private static Map<Integer, Double> testDualOf(double[] dual) {
+        List<Integer> tidList = DataInstance.getInstance().getTidList();
+        Map<Integer, Double> testDual = new HashMap<>();
+        for (int i = 0; i < tidList.size(); i++)
+            testDual.put(tidList.get(i), dual[i]);
+        return testDual;
+    }
 
+    private static Map<Integer, Double> vehicleDualOf(double[] dual) {
+        List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+        int offset = DataInstance.getInstance().getTidList().size();
+        Map<Integer, Double> vehicleDual = new HashMap<>();
+        for (int r = 0; r < releaseList.size(); r++)
+            vehicleDual.put(releaseList.get(r), dual[offset + r]);
+        return vehicleDual;
+    }
 
+    // dual objective plus (number of vehicles) x (most negative reduced cost)
+    private static double lagrangianBound(double[] dual, double minReducedCost) {
+        List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+        int numTests = DataInstance.getInstance().getTidList().size();
+        double bound = 0;
+        int numVehicles = 0;
+        for (int i = 0; i < numTests; i++)
+            bound += dual[i];
+        for (int r = 0; r < releaseList.size(); r++) {
+            int num = DataInstance.getInstance().numVehiclesByRelease(releaseList.get(r));
+            bound += num * dual[numTests + r];
+            numVehicles += num;
         }
+        return bound + numVehicles * Math.min(0, minReducedCost);
     }
 
-    private GRBModel buildModel(GRBEnv env, List<Column> colList) throws GRBException {
-        GRBModel model =    new GRBModel(env);
+    private MasterSolver buildModel(MasterSolver master, List<Column> colList) {
+        colIdx.clear();
 
         // build constraints first
         // test cover constraints
+        TestIndex index = TestIndex.get();
+        testCoverRows = new int[index.size()];
         for (int tid : DataInstance.getInstance().getTidList()) {
-            GRBConstr constr = model.addConstr(
-                            new GRBLinExpr(), GRB.GREATER_EQUAL, 1.0, "cover test " + tid);
-            testCoverConstrs.put(tid, constr);
+            testCoverRows[index.indexOf(tid)] = master.addRow(
+                    MasterSolver.GREATER_EQUAL, 1.0, "cover test " + tid);
         }
 
         // vehicle capacity constraints
         for (int release : DataInstance.getInstance().getVehicleReleaseList()) {
-            GRBConstr constr =  model.addConstr(
-                    new GRBLinExpr(), GRB.LESS_EQUAL, DataInstance.getInstance().numVehiclesByRelease(release),
-                    "vehicle capacity " + release);
-            vehicleCapConstrs.put(release, constr);
+            vehicleCapRows.put(release, master.addRow(
+                    MasterSolver.LESS_EQUAL, DataInstance.getInstance().numVehiclesByRelease(release),
+                    "vehicle capacity " + release));
         }
 
-        model.update();
         // add variables
-
-        for (Column col : colList) {
-            addOneCol(model, col, GRB.BINARY);
-        }
-
-        model.update();
-
-        return model;
+        addCols(master, colList);
+        return master;
     }
 
-    private void addOneCol(GRBModel model, Column col, char type) throws GRBException {
-        GRBColumn grbColumn = new GRBColumn();
-        GRBConstr vConstr = vehicleCapConstrs.get(col.getRelease());
-        grbColumn.addTerm(1, vConstr);
-
-        testCoverConstrs.entrySet().stream().filter(e -> col.getSeq().contains(e.getKey()))
-                .forEach(e -> grbColumn.addTerm(1, e.getValue()));
-        GRBVar v;
-        if (type == GRB.CONTINUOUS) {
-            v = model.addVar(0, GRB.INFINITY, col.getCost() + Global.VEHICLE_COST, GRB.CONTINUOUS,
-                    grbColumn, "use col " + col.getSeq());
-        } else {
-            v = model.addVar(0, 1, col.getCost() + Global.VEHICLE_COST,
-                    GRB.BINARY, grbColumn, "use col " + col.getSeq());
+    // add a batch of columns in one call, rows taken straight from the sequence indices
+    private void addCols(MasterSolver master, List<Column> cols) {
+        final int numCols = cols.size();
+        if (numCols == 0)
+            return;
+        double[] obj = new double[numCols];
+        int[][] rows = new int[numCols][];
+        String[] names = Global.DEBUG_NAMES ? new String[numCols] : null;
+
+        for (int i = 0; i < numCols; i++) {
+            Column col = cols.get(i);
+            int[] seq = col.getSeqIdx();
+            rows[i] = new int[seq.length + 1];
+            rows[i][0] = vehicleCapRows.get(col.getRelease());
+            for (int p = 0; p < seq.length; p++)
+                rows[i][p + 1] = testCoverRows[seq[p]];
+            obj[i] = col.getCost() + Global.VEHICLE_COST;
+            if (names != null)
+                names[i] = "use col " + col.getSeq();
         }
 
-        varMap.put(col, v);
+        int[] handles = master.addColumns(obj, rows, names);
+        for (int i = 0; i < numCols; i++)
+            colIdx.put(cols.get(i), handles[i]);
     }
 
 
-    private List<Column> parseSol(List<Column> colList) {
-        return colList.stream().filter(col -> {
-            try {
-                return varMap.get(col).get(GRB.DoubleAttr.X) > 0.5;
-            } catch (GRBException e) {
-                e.printStackTrace();
-                return false;
-            }
-        }).collect(Collectors.toList());
+    private List<Column> parseSol(MasterSolver master, List<Column> colList) {
+        int[] handles = colList.stream().mapToInt(colIdx::get).toArray();
+        double[] x = master.getValues(handles);
+        List<Column> usedCols = new ArrayList<>();
+        for (int i = 0; i < x.length; i++) {
+            if (x[i] > 0.5)
+                usedCols.add(colList.get(i));
+        }
+        return usedCols;
     }
 }
@@ -0,0 +1,120 @@
+package algorithm;
+
+import algorithm.master.MasterSolver;
+
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Keeps the restricted master small. A column that stays non-basic with a
+ * positive reduced cost for maxAge solves in a row is taken out of the
+ * model, and when more than maxSize columns are in the model the oldest
+ * non-basic ones go first. Removed columns are archived and come back once
+ * they price out again. Basic columns are never removed, so a purge does
+ * not change the LP optimum. A maxAge of 0 removes columns only to respect
+ * maxSize; with maxSize Integer.MAX_VALUE as well nothing is ever removed.
+ */
+public class ColumnPool<C extends Column> {
+
+    private static final double RC_TOLERANCE = 1e-6;
+
+    private final int maxAge;
+    private final int maxSize;
+    private final Map<C, Integer> ageMap;
+    private final Set<C> archive;
+
+    public ColumnPool(int maxAge, int maxSize) {
+        if (maxAge < 0 || maxSize < 1)
+            throw new IllegalArgumentException("Invalid pool limits: " + maxAge + ", " + maxSize);
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+        this.ageMap = new HashMap<>();
+        this.archive = new HashSet<>();
+    }
+
+    // a column entering the model
+    public void add(C col) {
+        archive.remove(col);
+        ageMap.put(col, 0);
+    }
+
+    public boolean isArchived(C col) {
+        return archive.contains(col);
+    }
+
+    public int size() {
+        return ageMap.size();
+    }
+
+    public int archiveSize() {
+        return archive.size();
+    }
+
+    // age the columns after an LP solve, and take the stale ones out of the master, colIdx and colList
+    public List<C> purge(MasterSolver master, Map<C, Integer> colIdx, List<C> colList) {
+        if (maxAge == 0 && maxSize == Integer.MAX_VALUE)
+            return new ArrayList<>();
+        List<C> cols = new ArrayList<>(ageMap.keySet());
+        int[] handles = new int[cols.size()];
+        for (int i = 0; i < handles.length; i++)
+            handles[i] = colIdx.get(cols.get(i));
+        boolean[] basic = master.isBasic(handles);
+        double[] rc = master.getReducedCosts(handles);
+
+        List<Integer> removable = new ArrayList<>();
+        for (int i = 0; i < handles.length; i++) {
+            C col = cols.get(i);
+            if (!basic[i] && rc[i] > RC_TOLERANCE) {
+                ageMap.put(col, ageMap.get(col) + 1);
+                removable.add(i);
+            } else {
+                ageMap.put(col, 0);
+            }
+        }
+
+        // oldest first, larger reduced cost first among equal ages
+        removable.sort(Comparator.<Integer>comparingInt(i -> -ageMap.get(cols.get(i)))
+                .thenComparingDouble(i -> -rc[i]));
+        int numRemove = Math.max(0, cols.size() - maxSize);
+        List<C> removed = new ArrayList<>();
+        List<Integer> removedHandles = new ArrayList<>();
+        for (int i : removable) {
+            C col = cols.get(i);
+            if (removed.size() >= numRemove && (maxAge == 0 || ageMap.get(col) < maxAge))
+                break;
+            removedHandles.add(handles[i]);
+            colIdx.remove(col);
+            ageMap.remove(col);
+            archive.add(col);
+            removed.add(col);
+        }
+        if (removed.isEmpty())
+            return removed;
+
+        master.removeColumns(removedHandles.stream().mapToInt(Integer::intValue).toArray());
+        Set<C> removedSet = new HashSet<>(removed);
+        colList.removeIf(removedSet::contains);
+        return removed;
+    }
+
+    // archived columns that price out at the given duals, they leave the archive
+    public List<C> reprice(ToDoubleFunction<C> reducedCost) {
+        List<C> result = new ArrayList<>();
+        for (C col : archive) {
+            if (reducedCost.applyAsDouble(col) < -0.001)
+                result.add(col);
+        }
+        archive.removeAll(result);
+        return result;
+    }
+
+    // empty the archive, e.g. to hand every column to the integer solve
+    public List<C> restoreAll() {
+        List<C> result = new ArrayList<>(archive);
+        archive.clear();
+        return result;
+    }
+}
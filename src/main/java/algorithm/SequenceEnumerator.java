@@ -0,0 +1,130 @@
+package algorithm;
+
+import utils.CompatibilityIndex;
+import utils.TestIndex;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Enumerates all compatible test sequences up to a given length, as arrays
+ * of dense test indices (see TestIndex). Candidate extensions come from the
+ * successor bitsets of CompatibilityIndex.
+ */
+public class SequenceEnumerator {
+
+    private SequenceEnumerator() {
+    }
+
+    // level by level, each level extended in parallel
+    public static List<int[]> enumerate(int maxLevel) {
+        final int numTests = TestIndex.get().size();
+
+        List<int[]> seqList = new ArrayList<>();
+        List<int[]> curr_lvl = new ArrayList<>();
+
+        int lvl = 1;
+        // the single ones
+        for (int t = 0; t < numTests; t++)
+            curr_lvl.add(new int[]{t});
+        seqList.addAll(curr_lvl);
+        System.out.printf("Level: %d, # seq: %d\n", lvl, curr_lvl.size());
+
+        while (lvl++ < maxLevel) {
+            // the parallel collector fills one list per partition and concatenates them in order
+            List<int[]> nxt_lvl = curr_lvl.parallelStream()
+                    .flatMap(SequenceEnumerator::extensions)
+                    .collect(Collectors.toList());
+            if (nxt_lvl.size()==0)
+                break;
+            seqList.addAll(nxt_lvl);
+            System.out.printf("Level: %d, # seq: %d\n", lvl, nxt_lvl.size());
+            curr_lvl = nxt_lvl;
+        }
+
+        System.out.printf("Total sequences: %d\n", seqList.size());
+        return seqList;
+    }
+
+    // depth first, only the current path is held in memory
+    public static Iterator<int[]> iterator(int maxLevel) {
+        return new DepthFirstIterator(maxLevel);
+    }
+
+    public static Stream<int[]> stream(int maxLevel) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(maxLevel),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private static Stream<int[]> extensions(int[] seq) {
+        long[] followers = CompatibilityIndex.get().followers(seq);
+        List<int[]> result = new ArrayList<>();
+        for (int t = CompatibilityIndex.nextSetBit(followers, 0); t >= 0;
+             t = CompatibilityIndex.nextSetBit(followers, t + 1)) {
+            int[] newSeq = Arrays.copyOf(seq, seq.length + 1);
+            newSeq[seq.length] = t;
+            result.add(newSeq);
+        }
+        return result.stream();
+    }
+
+    private static class DepthFirstIterator implements Iterator<int[]> {
+        private final CompatibilityIndex compIndex;
+        private final int maxLevel;
+        private final int[] path;
+        private final int[] cursor;     // next test to try at each depth
+        private final long[][] open;    // tests that can be appended at each depth
+        private int depth;
+        private int[] next;
+
+        private DepthFirstIterator(int maxLevel) {
+            this.compIndex = CompatibilityIndex.get();
+            this.maxLevel = maxLevel;
+            this.path = new int[Math.max(maxLevel, 0)];
+            this.cursor = new int[Math.max(maxLevel, 0)];
+            this.open = new long[Math.max(maxLevel, 0)][compIndex.numWords()];
+            this.depth = maxLevel > 0 ? 0 : -1;
+            if (depth == 0)
+                compIndex.followers(path, 0, open[0]);
+            this.next = advance();
+        }
+
+        private int[] advance() {
+            while (depth >= 0) {
+                int t = CompatibilityIndex.nextSetBit(open[depth], cursor[depth]);
+                if (t < 0) {
+                    depth--;
+                    continue;
+                }
+                cursor[depth] = t + 1;
+                path[depth] = t;
+                int[] seq = Arrays.copyOf(path, depth + 1);
+                if (depth + 1 < maxLevel) {
+                    compIndex.extend(open[depth], t, open[depth + 1]);
+                    cursor[++depth] = 0;
+                }
+                return seq;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public int[] next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            int[] result = next;
+            next = advance();
+            return result;
+        }
+    }
+}
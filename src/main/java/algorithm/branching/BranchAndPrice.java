@@ -0,0 +1,517 @@
+package algorithm.branching;
+
+import algorithm.Column;
+import algorithm.pricer.LabelingPricer;
+import algorithm.pricer.Pricer;
+import data.DataInstance;
+import gurobi.*;
+import utils.Global;
+import utils.TestIndex;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Branch-and-price over the vehicle columns. Every node re-runs column
+ * generation under its branching rules, which the pricer enforces. Open
+ * nodes are kept best bound first and processed by a pool of workers, each
+ * with its own pricer (from the supplier) and Gurobi environment.
+ *
+ * The node masters cover every test exactly once. Dropping a test from a
+ * sequence keeps it compatible and never increases its tardiness, so this
+ * has the same optimum as the covering master, and Ryan-Foster branching on
+ * test pairs is complete once the release of each test is branched on too.
+ * Artificial columns keep every node master feasible; a node whose LP still
+ * uses them after pricing is infeasible.
+ *
+ * Only an exact pricing round proves a node bound. When the pricer is not
+ * exact and finds nothing new, the round is repeated with the exact pricer
+ * (LabelingPricer by default) before the node is closed.
+ */
+public class BranchAndPrice {
+
+    private static final double EPS = 1e-6;
+    private static final double ARTIFICIAL_COST = 1e6;
+
+    private final Supplier<Pricer> pricerFactory;
+    private Supplier<Pricer> exactPricerFactory;
+    private final int numThreads;
+    private final long timeLimitMillis;
+
+    // search state, guarded by this
+    private final PriorityQueue<Node> openNodes;
+    private final List<Node> activeNodes;
+    private List<Column> incumbent;
+    private double incumbentValue;
+    private double lowerBound;
+    private long deadline;
+    private boolean stopped;
+    private int numNodes;
+
+    public BranchAndPrice(Supplier<Pricer> pricerFactory, int numThreads, long timeLimitMillis) {
+        this.pricerFactory = pricerFactory;
+        this.exactPricerFactory = LabelingPricer::new;
+        this.numThreads = numThreads;
+        this.timeLimitMillis = timeLimitMillis;
+        this.openNodes = new PriorityQueue<>(Comparator.<Node>comparingDouble(n -> n.bound)
+                .thenComparingInt(n -> -n.depth));
+        this.activeNodes = new ArrayList<>();
+    }
+
+    // confirms the rounds in which the pricer finds nothing new without being exact, must honor the rules
+    public void setExactPricer(Supplier<Pricer> exactPricerFactory) {
+        this.exactPricerFactory = exactPricerFactory;
+    }
+
+    public void solve(List<Column> rootColumns) {
+        long startTime = System.currentTimeMillis();
+        deadline = startTime + timeLimitMillis;
+        incumbent = new ArrayList<>();
+        incumbentValue = Double.MAX_VALUE;
+        stopped = false;
+        numNodes = 0;
+        openNodes.clear();
+        activeNodes.clear();
+
+        restrictedMasterHeuristic(rootColumns);
+        openNodes.add(new Node(new ArrayList<>(), new ArrayList<>(rootColumns), Double.NEGATIVE_INFINITY, 0));
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++)
+            futures.add(executor.submit(this::work));
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        executor.shutdown();
+
+        lowerBound = openNodes.isEmpty() ? incumbentValue : Math.min(incumbentValue, openNodes.peek().bound);
+        System.out.printf("Branch-and-price: %d nodes, %.1f s, incumbent: %.3f, lower bound: %.3f, %s\n",
+                numNodes, (System.currentTimeMillis() - startTime) / 1000.0, incumbentValue, lowerBound,
+                isOptimal() ? "optimal" : "stopped");
+    }
+
+    public List<Column> getSolution() {
+        return incumbent;
+    }
+
+    public double getObjective() {
+        return incumbentValue;
+    }
+
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    public boolean isOptimal() {
+        return !incumbent.isEmpty() && openNodes.isEmpty();
+    }
+
+    private void work() {
+        Pricer pricer = pricerFactory.get();
+        Pricer exactPricer = exactPricerFactory.get();
+        try {
+            GRBEnv env = new GRBEnv();
+            env.set(GRB.IntParam.OutputFlag, 0);
+            env.set(GRB.IntParam.Threads, 1);
+            Node node;
+            while ((node = takeNode()) != null) {
+                List<Node> children = null;
+                try {
+                    children = process(env, pricer, exactPricer, node);
+                } finally {
+                    finishNode(node, children);
+                }
+            }
+            env.dispose();
+        } catch (GRBException e) {
+            e.printStackTrace();
+        } finally {
+            pricer.end();
+            exactPricer.end();
+        }
+    }
+
+    // best open node, null once the tree is exhausted or the search stopped
+    private synchronized Node takeNode() {
+        while (true) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (stopped || remaining <= 0) {
+                stopped = true;
+                notifyAll();
+                return null;
+            }
+            Node node = openNodes.poll();
+            if (node != null) {
+                if (canPrune(node.bound))
+                    continue;
+                activeNodes.add(node);
+                return node;
+            }
+            if (activeNodes.isEmpty()) {
+                notifyAll();
+                return null;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                stopped = true;
+            }
+        }
+    }
+
+    // children == null puts the node back unresolved and stops the search
+    private synchronized void finishNode(Node node, List<Node> children) {
+        activeNodes.remove(node);
+        if (children == null) {
+            openNodes.add(node);
+            stopped = true;
+        } else {
+            openNodes.addAll(children);
+            numNodes++;
+        }
+        double bound = incumbentValue;
+        if (!openNodes.isEmpty())
+            bound = Math.min(bound, openNodes.peek().bound);
+        for (Node active : activeNodes)
+            bound = Math.min(bound, active.bound);
+        System.out.printf("Node: %d, depth: %d, # open: %d, incumbent: %.3f, lower bound: %.3f\n",
+                numNodes, node.depth, openNodes.size(), incumbentValue, bound);
+        notifyAll();
+    }
+
+    // column costs are integral, so a node is only worth exploring if it can improve by at least 1
+    private synchronized boolean canPrune(double bound) {
+        return Math.ceil(bound - EPS) >= incumbentValue - EPS;
+    }
+
+    private synchronized void updateIncumbent(List<Column> solution, double value) {
+        if (value < incumbentValue - EPS) {
+            incumbent = solution;
+            incumbentValue = value;
+            System.out.printf("New incumbent: %.3f\n", value);
+        }
+    }
+
+    private boolean timeUp() {
+        return System.currentTimeMillis() >= deadline;
+    }
+
+    // column generation at the node, then either prune, record an integral solution or branch.
+    // Returns null if the node could not be resolved, out of time, on an LP failure or when even the
+    // exact pricer could not finish its round.
+    private List<Node> process(GRBEnv env, Pricer pricer, Pricer exactPricer, Node node) throws GRBException {
+        pricer.setBranchingRules(node.rules);
+        exactPricer.setBranchingRules(node.rules);
+        NodeMaster master = new NodeMaster(env, node.columns);
+        try {
+            double bound = node.bound;
+            while (true) {
+                if (timeUp())
+                    return null;
+                master.model.optimize();
+                if (master.model.get(GRB.IntAttr.Status) != GRB.OPTIMAL)
+                    return null;
+                double masterObj = master.model.get(GRB.DoubleAttr.ObjVal);
+
+                Map<Integer, Double> testDual = new HashMap<>();
+                Map<Integer, Double> vehicleDual = new HashMap<>();
+                master.getDuals(testDual, vehicleDual);
+                List<Column> priced = pricer.price(testDual, vehicleDual);
+                Pricer roundPricer = pricer;
+                if (!pricer.isExact() && !master.hasNewColumn(priced)) {
+                    // nothing new from a heuristic or limited round proves nothing, confirm it
+                    priced = exactPricer.price(testDual, vehicleDual);
+                    roundPricer = exactPricer;
+                }
+                boolean exact = roundPricer.isExact();
+                if (exact)
+                    bound = Math.max(bound, masterObj + master.numVehicles * Math.min(0, roundPricer.getReducedCost()));
+                if (canPrune(bound))
+                    return new ArrayList<>();
+
+                int numAdded = 0;
+                for (Column col : priced) {
+                    if (master.addColumn(col))
+                        numAdded++;
+                }
+                if (numAdded == 0) {
+                    // the node LP is solved only if an exact round found nothing
+                    if (!exact)
+                        return null;
+                    bound = Math.max(bound, masterObj);
+                    break;
+                }
+                master.model.update();
+            }
+            node.bound = bound;
+
+            // infeasible under the branching rules, or no better than the incumbent
+            if (master.artificialValue() > EPS || canPrune(bound))
+                return new ArrayList<>();
+
+            BranchingRule[] branch = master.selectBranch();
+            if (branch == null) {
+                List<Column> solution = master.integralSolution();
+                updateIncumbent(solution, solution.stream().mapToDouble(c -> c.getCost() + Global.VEHICLE_COST)
+                        .sum());
+                return new ArrayList<>();
+            }
+
+            List<Node> children = new ArrayList<>();
+            for (BranchingRule rule : branch) {
+                List<BranchingRule> rules = new ArrayList<>(node.rules);
+                rules.add(rule);
+                List<Column> columns = new ArrayList<>();
+                for (Column col : master.columns) {
+                    if (rule.allows(col.getSeqIdx(), col.getRelease()))
+                        columns.add(col);
+                }
+                children.add(new Node(rules, columns, bound, node.depth + 1));
+            }
+            return children;
+        } finally {
+            master.model.dispose();
+        }
+    }
+
+    // the covering master over the root columns as a MIP, for a first incumbent
+    private void restrictedMasterHeuristic(List<Column> columns) {
+        try {
+            GRBEnv env = new GRBEnv();
+            env.set(GRB.IntParam.OutputFlag, 0);
+            GRBModel model = new GRBModel(env);
+            // a tenth of the budget
+            model.set(GRB.DoubleParam.TimeLimit, timeLimitMillis / 10000.0);
+
+            Map<Integer, GRBConstr> testCoverConstrs = new HashMap<>();
+            for (int tid : DataInstance.getInstance().getTidList())
+                testCoverConstrs.put(tid, model.addConstr(new GRBLinExpr(), GRB.GREATER_EQUAL, 1.0,
+                        "cover test " + tid));
+            Map<Integer, GRBConstr> vehicleCapConstrs = new HashMap<>();
+            for (int release : DataInstance.getInstance().getVehicleReleaseList())
+                vehicleCapConstrs.put(release, model.addConstr(new GRBLinExpr(), GRB.LESS_EQUAL,
+                        DataInstance.getInstance().numVehiclesByRelease(release), "vehicle capacity " + release));
+            model.update();
+
+            GRBVar[] vars = new GRBVar[columns.size()];
+            for (int i = 0; i < vars.length; i++) {
+                Column col = columns.get(i);
+                GRBColumn grbColumn = new GRBColumn();
+                grbColumn.addTerm(1, vehicleCapConstrs.get(col.getRelease()));
+                for (int tid : col.getSeq())
+                    grbColumn.addTerm(1, testCoverConstrs.get(tid));
+                vars[i] = model.addVar(0, 1, col.getCost() + Global.VEHICLE_COST, GRB.BINARY, grbColumn,
+                        Global.DEBUG_NAMES ? "use col " + col.getSeq() : null);
+            }
+            model.update();
+            model.optimize();
+
+            if (model.get(GRB.IntAttr.SolCount) > 0) {
+                double[] x = model.get(GRB.DoubleAttr.X, vars);
+                List<Column> solution = new ArrayList<>();
+                for (int i = 0; i < x.length; i++) {
+                    if (x[i] > 0.5)
+                        solution.add(columns.get(i));
+                }
+                updateIncumbent(solution, model.get(GRB.DoubleAttr.ObjVal));
+            }
+            model.dispose();
+            env.dispose();
+        } catch (GRBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Node {
+        private final List<BranchingRule> rules;
+        private final List<Column> columns;
+        private final int depth;
+        private double bound; // parent bound until the node is solved
+
+        private Node(List<BranchingRule> rules, List<Column> columns, double bound, int depth) {
+            this.rules = rules;
+            this.columns = columns;
+            this.bound = bound;
+            this.depth = depth;
+        }
+    }
+
+    // set partitioning master of one node, tests and releases by dense index
+    private static class NodeMaster {
+        private final GRBModel model;
+        private final GRBConstr[] testCoverConstrs;
+        private final GRBConstr[] vehicleCapConstrs;
+        private final GRBVar[] artificialVars;
+        private final int[] releaseArr;
+        private final int numVehicles;
+        private final List<Column> columns;
+        private final List<GRBVar> vars;
+        private final Set<Column> columnSet;
+
+        private NodeMaster(GRBEnv env, List<Column> initColumns) throws GRBException {
+            TestIndex index = TestIndex.get();
+            List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+            this.model = new GRBModel(env);
+            this.testCoverConstrs = new GRBConstr[index.size()];
+            this.vehicleCapConstrs = new GRBConstr[releaseList.size()];
+            this.artificialVars = new GRBVar[index.size()];
+            this.releaseArr = releaseList.stream().mapToInt(Integer::intValue).toArray();
+            this.columns = new ArrayList<>();
+            this.vars = new ArrayList<>();
+            this.columnSet = new HashSet<>();
+
+            for (int t = 0; t < testCoverConstrs.length; t++)
+                testCoverConstrs[t] = model.addConstr(new GRBLinExpr(), GRB.EQUAL, 1.0,
+                        "cover test " + index.tidAt(t));
+            int totalVehicles = 0;
+            for (int r = 0; r < releaseArr.length; r++) {
+                int num = DataInstance.getInstance().numVehiclesByRelease(releaseArr[r]);
+                vehicleCapConstrs[r] = model.addConstr(new GRBLinExpr(), GRB.LESS_EQUAL, num,
+                        "vehicle capacity " + releaseArr[r]);
+                totalVehicles += num;
+            }
+            this.numVehicles = totalVehicles;
+            model.update();
+
+            for (int t = 0; t < artificialVars.length; t++) {
+                GRBColumn grbColumn = new GRBColumn();
+                grbColumn.addTerm(1, testCoverConstrs[t]);
+                artificialVars[t] = model.addVar(0, GRB.INFINITY, ARTIFICIAL_COST, GRB.CONTINUOUS, grbColumn,
+                        "artificial " + index.tidAt(t));
+            }
+            for (Column col : initColumns)
+                addColumn(col);
+            model.update();
+        }
+
+        private boolean hasNewColumn(List<Column> cols) {
+            for (Column col : cols) {
+                if (!columnSet.contains(col))
+                    return true;
+            }
+            return false;
+        }
+
+        // false if the column is already in the master
+        private boolean addColumn(Column col) throws GRBException {
+            if (!columnSet.add(col))
+                return false;
+            GRBColumn grbColumn = new GRBColumn();
+            grbColumn.addTerm(1, vehicleCapConstrs[releaseIndex(col.getRelease())]);
+            for (int t : col.getSeqIdx())
+                grbColumn.addTerm(1, testCoverConstrs[t]);
+            vars.add(model.addVar(0, GRB.INFINITY, col.getCost() + Global.VEHICLE_COST, GRB.CONTINUOUS,
+                    grbColumn, Global.DEBUG_NAMES ? "use col " + col.getSeq() : null));
+            columns.add(col);
+            return true;
+        }
+
+        private int releaseIndex(int release) {
+            for (int r = 0; r < releaseArr.length; r++) {
+                if (releaseArr[r] == release)
+                    return r;
+            }
+            throw new IllegalArgumentException("Unknown release: " + release);
+        }
+
+        private void getDuals(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual)
+                throws GRBException {
+            TestIndex index = TestIndex.get();
+            double[] testPi = model.get(GRB.DoubleAttr.Pi, testCoverConstrs);
+            double[] vehiclePi = model.get(GRB.DoubleAttr.Pi, vehicleCapConstrs);
+            for (int t = 0; t < testPi.length; t++)
+                testDual.put(index.tidAt(t), testPi[t]);
+            for (int r = 0; r < vehiclePi.length; r++)
+                vehicleDual.put(releaseArr[r], vehiclePi[r]);
+        }
+
+        private double artificialValue() throws GRBException {
+            double sum = 0;
+            for (double x : model.get(GRB.DoubleAttr.X, artificialVars))
+                sum += x;
+            return sum;
+        }
+
+        private double[] columnValues() throws GRBException {
+            return model.get(GRB.DoubleAttr.X, vars.toArray(new GRBVar[0]));
+        }
+
+        // the most fractional test pair, else the most fractional (test, release) pair, null if neither is
+        private BranchingRule[] selectBranch() throws GRBException {
+            final int numTests = testCoverConstrs.length;
+            double[] x = columnValues();
+            Map<Long, Double> pairValue = new HashMap<>();
+            Map<Long, Double> releaseValue = new HashMap<>();
+            for (int i = 0; i < x.length; i++) {
+                if (x[i] <= EPS)
+                    continue;
+                int[] seq = columns.get(i).getSeqIdx();
+                int r = releaseIndex(columns.get(i).getRelease());
+                for (int p = 0; p < seq.length; p++) {
+                    releaseValue.merge((long) seq[p] * releaseArr.length + r, x[i], Double::sum);
+                    for (int q = p + 1; q < seq.length; q++) {
+                        long key = (long) Math.min(seq[p], seq[q]) * numTests + Math.max(seq[p], seq[q]);
+                        pairValue.merge(key, x[i], Double::sum);
+                    }
+                }
+            }
+
+            long pair = mostFractional(pairValue);
+            if (pair >= 0) {
+                int first = (int) (pair / numTests);
+                int second = (int) (pair % numTests);
+                return new BranchingRule[]{new PairRule(first, second, true), new PairRule(first, second, false)};
+            }
+            long testRelease = mostFractional(releaseValue);
+            if (testRelease >= 0) {
+                int test = (int) (testRelease / releaseArr.length);
+                int release = releaseArr[(int) (testRelease % releaseArr.length)];
+                return new BranchingRule[]{new ReleaseRule(test, release, true),
+                        new ReleaseRule(test, release, false)};
+            }
+            return null;
+        }
+
+        private static long mostFractional(Map<Long, Double> values) {
+            long best = -1;
+            double bestDistance = EPS;
+            for (Map.Entry<Long, Double> entry : values.entrySet()) {
+                double distance = Math.min(entry.getValue(), 1 - entry.getValue());
+                if (distance > bestDistance) {
+                    best = entry.getKey();
+                    bestDistance = distance;
+                }
+            }
+            return best;
+        }
+
+        // with every pair and release integral, the columns covering a test all share its test set and
+        // release; they only differ in order and have equal cost, so one of each group is kept
+        private List<Column> integralSolution() throws GRBException {
+            double[] x = columnValues();
+            Map<String, Column> groups = new HashMap<>();
+            for (int i = 0; i < x.length; i++) {
+                if (x[i] <= EPS)
+                    continue;
+                Column col = columns.get(i);
+                int[] tests = col.getSeqIdx().clone();
+                Arrays.sort(tests);
+                groups.merge(Arrays.toString(tests) + "@" + col.getRelease(), col,
+                        (a, b) -> a.getCost() <= b.getCost() ? a : b);
+            }
+            return new ArrayList<>(groups.values());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package algorithm.branching;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * A restriction on the columns allowed below a branch-and-price node. Tests
+ * are dense indices, see TestIndex; releases are release times.
+ */
+public abstract class BranchingRule {
+
+    public boolean allows(int[] seqIdx, int release) {
+        return allows(seqIdx, 0, seqIdx.length, release);
+    }
+
+    // the column made of tests[from] .. tests[to - 1] on the given release
+    public abstract boolean allows(int[] tests, int from, int to, int release);
+
+    protected static boolean contains(int[] tests, int from, int to, int test) {
+        for (int i = from; i < to; i++) {
+            if (tests[i] == test)
+                return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package algorithm.branching;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Ryan-Foster branch on a pair of tests: either every column covers both or
+ * neither of them (together), or no column covers both (apart).
+ */
+public class PairRule extends BranchingRule {
+
+    private final int first;
+    private final int second;
+    private final boolean together;
+
+    public PairRule(int first, int second, boolean together) {
+        this.first = first;
+        this.second = second;
+        this.together = together;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getSecond() {
+        return second;
+    }
+
+    public boolean isTogether() {
+        return together;
+    }
+
+    @Override
+    public boolean allows(int[] tests, int from, int to, int release) {
+        boolean hasFirst = contains(tests, from, to, first);
+        boolean hasSecond = contains(tests, from, to, second);
+        return together ? hasFirst == hasSecond : !(hasFirst && hasSecond);
+    }
+
+    @Override
+    public String toString() {
+        return (together ? "together(" : "apart(") + first + ", " + second + ")";
+    }
+}
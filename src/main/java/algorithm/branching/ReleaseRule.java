@@ -0,0 +1,49 @@
+package algorithm.branching;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Branch on the vehicle serving a test: either the test is only covered by
+ * columns on the given release (assigned), or never by one (not assigned).
+ * Needed when every test pair is integral but the release choice is not.
+ */
+public class ReleaseRule extends BranchingRule {
+
+    private final int test;
+    private final int release;
+    private final boolean assigned;
+
+    public ReleaseRule(int test, int release, boolean assigned) {
+        this.test = test;
+        this.release = release;
+        this.assigned = assigned;
+    }
+
+    public int getTest() {
+        return test;
+    }
+
+    public int getRelease() {
+        return release;
+    }
+
+    public boolean isAssigned() {
+        return assigned;
+    }
+
+    // whether the test may be covered by a column on the given release
+    public boolean allowsTestOn(int release) {
+        return assigned == (release == this.release);
+    }
+
+    @Override
+    public boolean allows(int[] tests, int from, int to, int release) {
+        return allowsTestOn(release) || !contains(tests, from, to, test);
+    }
+
+    @Override
+    public String toString() {
+        return (assigned ? "on(" : "off(") + test + ", " + release + ")";
+    }
+}
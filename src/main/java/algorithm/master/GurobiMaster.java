@@ -0,0 +1,224 @@
+package algorithm.master;
+
+import gurobi.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * MasterSolver on a Gurobi model. Gurobi errors are printed, and the call
+ * then returns a neutral value: no handle, no optimal solution or NaN.
+ */
+public class GurobiMaster implements MasterSolver {
+
+    private final GRBEnv env;
+    private final GRBModel model;
+    private final List<GRBConstr> rows;
+    private final List<GRBVar> vars; // by column handle, null once removed
+    private boolean dirty;
+
+    public GurobiMaster() {
+        GRBEnv env = null;
+        GRBModel model = null;
+        try {
+            env = new GRBEnv();
+            model = new GRBModel(env);
+            model.getEnv().set(GRB.IntParam.OutputFlag, 0);
+        } catch (GRBException e) {
+            e.printStackTrace();
+        }
+        this.env = env;
+        this.model = model;
+        rows = new ArrayList<>();
+        vars = new ArrayList<>();
+    }
+
+    @Override
+    public int addRow(char sense, double rhs, String name) {
+        try {
+            rows.add(model.addConstr(new GRBLinExpr(), sense, rhs, name));
+            dirty = true;
+            return rows.size() - 1;
+        } catch (GRBException e) {
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    @Override
+    public int[] addColumns(double[] obj, int[][] colRows, String[] names) {
+        final int numCols = obj.length;
+        int[] handles = new int[numCols];
+        if (numCols == 0)
+            return handles;
+        try {
+            if (dirty)
+                model.update();
+            double[] lb = new double[numCols];
+            double[] ub = new double[numCols];
+            char[] types = new char[numCols];
+            GRBColumn[] grbColumns = new GRBColumn[numCols];
+            double[] ones = new double[0];
+            Arrays.fill(ub, GRB.INFINITY);
+            Arrays.fill(types, GRB.CONTINUOUS);
+            for (int i = 0; i < numCols; i++) {
+                GRBConstr[] constrs = new GRBConstr[colRows[i].length];
+                for (int k = 0; k < constrs.length; k++)
+                    constrs[k] = rows.get(colRows[i][k]);
+                if (ones.length < constrs.length) {
+                    ones = new double[constrs.length];
+                    Arrays.fill(ones, 1);
+                }
+                grbColumns[i] = new GRBColumn();
+                grbColumns[i].addTerms(ones, constrs, 0, constrs.length);
+            }
+
+            GRBVar[] newVars = model.addVars(lb, ub, obj, types, names, grbColumns);
+            for (int i = 0; i < numCols; i++) {
+                handles[i] = vars.size();
+                vars.add(newVars[i]);
+            }
+            dirty = true;
+        } catch (GRBException e) {
+            e.printStackTrace();
+        }
+        return handles;
+    }
+
+    @Override
+    public void removeColumns(int[] cols) {
+        try {
+            for (int col : cols) {
+                model.remove(vars.get(col));
+                vars.set(col, null);
+            }
+            dirty = true;
+        } catch (GRBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean solve() {
+        try {
+            if (dirty)
+                model.update();
+            dirty = false;
+            model.optimize();
+            return model.get(GRB.IntAttr.Status) == GRB.OPTIMAL;
+        } catch (GRBException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public double getObjective() {
+        try {
+            return model.get(GRB.DoubleAttr.ObjVal);
+        } catch (GRBException e) {
+            e.printStackTrace();
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public double[] getDuals() {
+        try {
+            return model.get(GRB.DoubleAttr.Pi, rows.toArray(new GRBConstr[0]));
+        } catch (GRBException e) {
+            e.printStackTrace();
+            return nanArray(rows.size());
+        }
+    }
+
+    @Override
+    public double[] getValues(int[] cols) {
+        try {
+            return model.get(GRB.DoubleAttr.X, varsOf(cols));
+        } catch (GRBException e) {
+            e.printStackTrace();
+            return nanArray(cols.length);
+        }
+    }
+
+    @Override
+    public double[] getReducedCosts(int[] cols) {
+        try {
+            return model.get(GRB.DoubleAttr.RC, varsOf(cols));
+        } catch (GRBException e) {
+            e.printStackTrace();
+            return nanArray(cols.length);
+        }
+    }
+
+    @Override
+    public boolean[] isBasic(int[] cols) {
+        try {
+            int[] vBasis = model.get(GRB.IntAttr.VBasis, varsOf(cols));
+            boolean[] basic = new boolean[cols.length];
+            for (int i = 0; i < cols.length; i++)
+                basic[i] = vBasis[i] == GRB.BASIC;
+            return basic;
+        } catch (GRBException e) {
+            e.printStackTrace();
+            return new boolean[cols.length];
+        }
+    }
+
+    private static double[] nanArray(int length) {
+        double[] result = new double[length];
+        Arrays.fill(result, Double.NaN);
+        return result;
+    }
+
+    private GRBVar[] varsOf(int[] cols) {
+        GRBVar[] result = new GRBVar[cols.length];
+        for (int i = 0; i < cols.length; i++)
+            result[i] = vars.get(cols[i]);
+        return result;
+    }
+
+    @Override
+    public boolean supportsInteger() {
+        return true;
+    }
+
+    @Override
+    public void setInteger(boolean integer) {
+        try {
+            for (GRBVar var : vars) {
+                if (var == null)
+                    continue;
+                var.set(GRB.CharAttr.VType, integer ? GRB.BINARY : GRB.CONTINUOUS);
+                var.set(GRB.DoubleAttr.UB, integer ? 1 : GRB.INFINITY);
+            }
+            dirty = true;
+        } catch (GRBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void setVerbose(boolean verbose) {
+        try {
+            model.getEnv().set(GRB.IntParam.OutputFlag, verbose ? 1 : 0);
+        } catch (GRBException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void end() {
+        try {
+            model.dispose();
+            env.dispose();
+        } catch (GRBException e) {
+            e.printStackTrace();
+        }
+    }
+}
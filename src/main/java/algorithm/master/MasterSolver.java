@@ -0,0 +1,36 @@
+package algorithm.master;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * The restricted master LP as seen by the column generation loops. Rows and
+ * columns are referred to by the handles returned when they are added; a
+ * column has coefficient 1 in each of its rows and bounds [0, inf), or
+ * [0, 1] and integral once setInteger(true) is called. All rows are added
+ * before the first column.
+ */
+public interface MasterSolver {
+    char GREATER_EQUAL = '>';
+    char LESS_EQUAL = '<';
+    char EQUAL = '=';
+
+    int addRow(char sense, double rhs, String name);
+    // names may be null
+    int[] addColumns(double[] obj, int[][] rows, String[] names);
+    void removeColumns(int[] cols);
+
+    // false if the problem has no optimal solution
+    boolean solve();
+    double getObjective();
+    // by row handle, same sign convention as Gurobi's Pi
+    double[] getDuals();
+    double[] getValues(int[] cols);
+    double[] getReducedCosts(int[] cols);
+    boolean[] isBasic(int[] cols);
+
+    boolean supportsInteger();
+    void setInteger(boolean integer);
+    void setVerbose(boolean verbose);
+    void end();
+}
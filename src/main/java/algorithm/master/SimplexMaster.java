@@ -0,0 +1,465 @@
+package algorithm.master;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Pure Java revised simplex for the restricted master LP, with a dense
+ * explicit basis inverse (the masters have a few hundred rows at most),
+ * product form updates and a fresh inverse every REFACTOR_INTERVAL pivots.
+ *
+ * The basis is kept between solves. New columns enter nonbasic at zero, so
+ * the previous optimal basis stays primal feasible and the next solve
+ * continues with primal simplex from it, usually for a handful of pivots.
+ * The first solve starts from slacks, with artificial columns on the rows
+ * the slacks cannot satisfy (phase 1). Pricing is partial over chunks of
+ * PRICING_CHUNK variables; after MAX_DEGENERATE degenerate pivots in a row
+ * Bland's rule takes over until the objective moves again.
+ *
+ * Variables are numbered slacks [0, m), artificials [m, 2m) and columns
+ * from 2m on. Only the LP relaxation is supported.
+ */
+public class SimplexMaster implements MasterSolver {
+
+    private static final double INF = Double.POSITIVE_INFINITY;
+    private static final double PRIMAL_TOL = 1e-9;
+    private static final double OPT_TOL = 1e-7;
+    private static final double PIVOT_TOL = 1e-9;
+    private static final int REFACTOR_INTERVAL = 100;
+    private static final int PRICING_CHUNK = 1000;
+    private static final int MAX_DEGENERATE = 50;
+    private static final int MAX_ITER = 1000000;
+
+    // rows, fixed once the first column is added
+    private final List<Character> senseList;
+    private final List<Double> rhsList;
+    private int m;
+    private double[] rhs;
+    private double[] slackSign; // +1 for <=, -1 for >=, 0 for = (slack fixed at 0)
+    private double[] artSign;
+
+    // columns by handle
+    private int numCols;
+    private double[] colCost;
+    private int[][] colRows;
+
+    // variables by id
+    private double[] upper;
+    private int[] basisPos; // row of a basic variable, -1 if nonbasic
+
+    // basis
+    private int[] basis;
+    private double[] xB;
+    private double[][] binv;
+    private boolean started;
+    private boolean phase2;
+    private int pivotsSinceRefactor;
+    private int degenerateCount;
+    private int priceStart;
+
+    private double[] dual;
+    private double objective;
+
+    public SimplexMaster() {
+        senseList = new ArrayList<>();
+        rhsList = new ArrayList<>();
+    }
+
+    @Override
+    public int addRow(char sense, double rhs, String name) {
+        if (this.rhs != null)
+            throw new IllegalStateException("Rows must be added before the first column");
+        if (sense != GREATER_EQUAL && sense != LESS_EQUAL && sense != EQUAL)
+            throw new IllegalArgumentException("Unknown row sense: " + sense);
+        senseList.add(sense);
+        rhsList.add(rhs);
+        return rhsList.size() - 1;
+    }
+
+    private void freezeRows() {
+        if (rhs != null)
+            return;
+        m = rhsList.size();
+        rhs = new double[m];
+        slackSign = new double[m];
+        artSign = new double[m];
+        colCost = new double[16];
+        colRows = new int[16][];
+        upper = new double[2 * m + 16];
+        basisPos = new int[2 * m + 16];
+        Arrays.fill(basisPos, -1);
+        for (int i = 0; i < m; i++) {
+            rhs[i] = rhsList.get(i);
+            char sense = senseList.get(i);
+            slackSign[i] = sense == LESS_EQUAL ? 1 : sense == GREATER_EQUAL ? -1 : 0;
+            upper[i] = sense == EQUAL ? 0 : INF;
+        }
+    }
+
+    @Override
+    public int[] addColumns(double[] obj, int[][] rows, String[] names) {
+        freezeRows();
+        int[] handles = new int[obj.length];
+        if (numCols + obj.length > colCost.length) {
+            int capacity = Math.max(2 * colCost.length, numCols + obj.length);
+            colCost = Arrays.copyOf(colCost, capacity);
+            colRows = Arrays.copyOf(colRows, capacity);
+            upper = Arrays.copyOf(upper, 2 * m + capacity);
+            int oldLength = basisPos.length;
+            basisPos = Arrays.copyOf(basisPos, 2 * m + capacity);
+            Arrays.fill(basisPos, oldLength, basisPos.length, -1);
+        }
+        // new columns are nonbasic at zero, the current basis stays feasible
+        for (int i = 0; i < obj.length; i++) {
+            handles[i] = numCols;
+            colCost[numCols] = obj[i];
+            colRows[numCols] = rows[i].clone();
+            upper[2 * m + numCols] = INF;
+            numCols++;
+        }
+        return handles;
+    }
+
+    @Override
+    public void removeColumns(int[] cols) {
+        for (int col : cols) {
+            int v = 2 * m + col;
+            upper[v] = 0;
+            // a basic column can not just disappear, start over from the slacks
+            if (basisPos[v] >= 0)
+                started = false;
+        }
+    }
+
+    @Override
+    public boolean solve() {
+        freezeRows();
+        if (!started)
+            coldStart();
+        if (!phase2) {
+            if (!iterate(true))
+                return false;
+            double infeasibility = 0;
+            for (int i = 0; i < m; i++) {
+                if (isArtificial(basis[i]))
+                    infeasibility += xB[i];
+            }
+            if (infeasibility > OPT_TOL)
+                return false;
+            // artificials stay fixed at zero from now on
+            for (int i = 0; i < m; i++) {
+                upper[m + i] = 0;
+                if (isArtificial(basis[i]))
+                    xB[i] = 0;
+            }
+            phase2 = true;
+        }
+        if (!iterate(false))
+            return false;
+
+        dual = new double[m];
+        computeY(false, dual);
+        objective = 0;
+        for (int i = 0; i < m; i++)
+            objective += cost(basis[i], false) * xB[i];
+        return true;
+    }
+
+    private void coldStart() {
+        basis = new int[m];
+        xB = new double[m];
+        binv = new double[m][m];
+        Arrays.fill(basisPos, -1);
+        phase2 = true;
+        for (int i = 0; i < m; i++) {
+            int v;
+            double coef;
+            if (slackSign[i] != 0 && rhs[i] * slackSign[i] >= 0) {
+                v = i;
+                coef = slackSign[i];
+                upper[m + i] = 0;
+            } else {
+                artSign[i] = rhs[i] >= 0 ? 1 : -1;
+                v = m + i;
+                coef = artSign[i];
+                upper[v] = INF;
+                phase2 = false;
+            }
+            basis[i] = v;
+            basisPos[v] = i;
+            binv[i][i] = 1 / coef;
+            xB[i] = rhs[i] / coef;
+        }
+        started = true;
+        pivotsSinceRefactor = 0;
+        degenerateCount = 0;
+    }
+
+    // primal simplex on the current basis, false if unbounded
+    private boolean iterate(boolean phase1) {
+        double[] y = new double[m];
+        double[] alpha = new double[m];
+        for (int iter = 0; iter < MAX_ITER; iter++) {
+            if (pivotsSinceRefactor >= REFACTOR_INTERVAL)
+                refactor();
+            computeY(phase1, y);
+            int q = selectEntering(phase1, y);
+            if (q < 0)
+                return true;
+            ftran(q, alpha);
+            int r = ratioTest(alpha);
+            if (r < 0)
+                return false;
+            pivot(r, q, alpha);
+        }
+        throw new IllegalStateException("Simplex iteration limit reached");
+    }
+
+    private boolean isArtificial(int v) {
+        return v >= m && v < 2 * m;
+    }
+
+    private double cost(int v, boolean phase1) {
+        if (phase1)
+            return isArtificial(v) ? 1 : 0;
+        return v >= 2 * m ? colCost[v - 2 * m] : 0;
+    }
+
+    // y = c_B B^-1
+    private void computeY(boolean phase1, double[] y) {
+        Arrays.fill(y, 0);
+        for (int i = 0; i < m; i++) {
+            double c = cost(basis[i], phase1);
+            if (c == 0)
+                continue;
+            double[] row = binv[i];
+            for (int k = 0; k < m; k++)
+                y[k] += c * row[k];
+        }
+    }
+
+    // y . a_v
+    private double dot(int v, double[] y) {
+        if (v < m)
+            return slackSign[v] * y[v];
+        if (v < 2 * m)
+            return artSign[v - m] * y[v - m];
+        double sum = 0;
+        for (int row : colRows[v - 2 * m])
+            sum += y[row];
+        return sum;
+    }
+
+    // out = B^-1 a_v
+    private void ftran(int v, double[] out) {
+        Arrays.fill(out, 0);
+        if (v < 2 * m) {
+            int row = v < m ? v : v - m;
+            double coef = v < m ? slackSign[row] : artSign[row];
+            for (int i = 0; i < m; i++)
+                out[i] = coef * binv[i][row];
+            return;
+        }
+        for (int row : colRows[v - 2 * m]) {
+            for (int i = 0; i < m; i++)
+                out[i] += binv[i][row];
+        }
+    }
+
+    // most negative reduced cost within the next chunk, or the first one under Bland's rule
+    private int selectEntering(boolean phase1, double[] y) {
+        final int total = m + numCols; // slacks, then columns
+        final boolean bland = degenerateCount > MAX_DEGENERATE;
+        int best = -1;
+        double bestReducedCost = -OPT_TOL;
+        int scanned = 0;
+        for (int k = 0; k < total; k++) {
+            int idx = bland ? k : (priceStart + k) % total;
+            int v = idx < m ? idx : m + idx;
+            if (basisPos[v] >= 0 || upper[v] == 0)
+                continue;
+            double d = cost(v, phase1) - dot(v, y);
+            if (d < bestReducedCost) {
+                best = v;
+                bestReducedCost = d;
+                if (bland)
+                    break;
+            }
+            if (++scanned >= PRICING_CHUNK && best >= 0) {
+                priceStart = (idx + 1) % total;
+                break;
+            }
+        }
+        return best;
+    }
+
+    // leaving row, -1 if the entering variable can grow forever
+    private int ratioTest(double[] alpha) {
+        final boolean bland = degenerateCount > MAX_DEGENERATE;
+        int r = -1;
+        double best = INF;
+        double bestPivot = 0;
+        for (int i = 0; i < m; i++) {
+            double ratio = ratio(i, alpha[i]);
+            if (ratio == INF)
+                continue;
+            boolean better = ratio < best - PRIMAL_TOL;
+            boolean tie = !better && ratio <= best + PRIMAL_TOL;
+            if (better || (tie && (bland ? basis[i] < basis[r] : Math.abs(alpha[i]) > bestPivot))) {
+                r = i;
+                best = Math.min(best, ratio);
+                bestPivot = Math.abs(alpha[i]);
+            }
+        }
+        return r;
+    }
+
+    private double ratio(int i, double a) {
+        if (a > PIVOT_TOL)
+            return Math.max(0, xB[i]) / a;
+        if (a < -PIVOT_TOL && upper[basis[i]] < INF)
+            return Math.max(0, upper[basis[i]] - xB[i]) / -a;
+        return INF;
+    }
+
+    private void pivot(int r, int q, double[] alpha) {
+        double t = ratio(r, alpha[r]);
+        for (int i = 0; i < m; i++)
+            xB[i] -= t * alpha[i];
+        int leaving = basis[r];
+        basisPos[leaving] = -1;
+        if (isArtificial(leaving))
+            upper[leaving] = 0;
+        xB[r] = t;
+
+        double[] pivotRow = binv[r];
+        double inv = 1 / alpha[r];
+        for (int k = 0; k < m; k++)
+            pivotRow[k] *= inv;
+        for (int i = 0; i < m; i++) {
+            double f = alpha[i];
+            if (i == r || f == 0)
+                continue;
+            double[] row = binv[i];
+            for (int k = 0; k < m; k++)
+                row[k] -= f * pivotRow[k];
+        }
+        basis[r] = q;
+        basisPos[q] = r;
+        pivotsSinceRefactor++;
+        degenerateCount = t < PRIMAL_TOL ? degenerateCount + 1 : 0;
+    }
+
+    // invert the basis from scratch (Gauss-Jordan, partial pivoting) and recompute its values
+    private void refactor() {
+        double[][] a = new double[m][2 * m];
+        double[] column = new double[m];
+        for (int j = 0; j < m; j++) {
+            Arrays.fill(column, 0);
+            int v = basis[j];
+            if (v < m)
+                column[v] = slackSign[v];
+            else if (v < 2 * m)
+                column[v - m] = artSign[v - m];
+            else
+                for (int row : colRows[v - 2 * m])
+                    column[row] = 1;
+            for (int i = 0; i < m; i++)
+                a[i][j] = column[i];
+        }
+        for (int i = 0; i < m; i++)
+            a[i][m + i] = 1;
+
+        for (int c = 0; c < m; c++) {
+            int p = c;
+            for (int i = c + 1; i < m; i++) {
+                if (Math.abs(a[i][c]) > Math.abs(a[p][c]))
+                    p = i;
+            }
+            if (Math.abs(a[p][c]) < 1e-12)
+                throw new IllegalStateException("Singular basis");
+            double[] tmp = a[p];
+            a[p] = a[c];
+            a[c] = tmp;
+            double inv = 1 / a[c][c];
+            for (int k = 0; k < 2 * m; k++)
+                a[c][k] *= inv;
+            for (int i = 0; i < m; i++) {
+                double f = a[i][c];
+                if (i == c || f == 0)
+                    continue;
+                for (int k = 0; k < 2 * m; k++)
+                    a[i][k] -= f * a[c][k];
+            }
+        }
+        for (int i = 0; i < m; i++) {
+            binv[i] = Arrays.copyOfRange(a[i], m, 2 * m);
+            double value = 0;
+            for (int k = 0; k < m; k++)
+                value += binv[i][k] * rhs[k];
+            xB[i] = value;
+        }
+        pivotsSinceRefactor = 0;
+    }
+
+    @Override
+    public double getObjective() {
+        return objective;
+    }
+
+    @Override
+    public double[] getDuals() {
+        return dual.clone();
+    }
+
+    @Override
+    public double[] getValues(int[] cols) {
+        double[] values = new double[cols.length];
+        for (int i = 0; i < cols.length; i++) {
+            int pos = basisPos[2 * m + cols[i]];
+            values[i] = pos >= 0 ? xB[pos] : 0;
+        }
+        return values;
+    }
+
+    @Override
+    public double[] getReducedCosts(int[] cols) {
+        double[] reducedCosts = new double[cols.length];
+        for (int i = 0; i < cols.length; i++)
+            reducedCosts[i] = colCost[cols[i]] - dot(2 * m + cols[i], dual);
+        return reducedCosts;
+    }
+
+    @Override
+    public boolean[] isBasic(int[] cols) {
+        boolean[] basic = new boolean[cols.length];
+        for (int i = 0; i < cols.length; i++)
+            basic[i] = basisPos[2 * m + cols[i]] >= 0;
+        return basic;
+    }
+
+    @Override
+    public boolean supportsInteger() {
+        return false;
+    }
+
+    @Override
+    public void setInteger(boolean integer) {
+        if (integer)
+            throw new UnsupportedOperationException("SimplexMaster only solves the LP relaxation");
+    }
+
+    @Override
+    public void setVerbose(boolean verbose) {
+
+    }
+
+    @Override
+    public void end() {
+
+    }
+}
@@ -0,0 +1,139 @@
+package algorithm.pricer;
+
+import algorithm.Column;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Runs the rounds of a pricer on one worker thread. Columns found by the
+ * running round queue up as the pricer reports them (see
+ * Pricer.setColumnListener) and again when the round returns, so the caller
+ * can re-optimize the master while the round is still in progress. At most
+ * one round runs at a time.
+ */
+public class AsyncPricer {
+
+    private final Pricer pricer;
+    private final ExecutorService executor;
+
+    // guarded by this
+    private final List<Column> found;
+    private boolean busy;
+    private Round finished;
+    private RuntimeException failure;
+
+    public AsyncPricer(Pricer pricer) {
+        this.pricer = pricer;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "async pricer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.found = new ArrayList<>();
+        pricer.setColumnListener(this::addColumns);
+    }
+
+    public synchronized boolean isBusy() {
+        return busy;
+    }
+
+    // start a round at the given duals, the worker must be free
+    public synchronized void submit(double[] dual, Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
+        if (busy)
+            throw new IllegalStateException("A pricing round is already running");
+        busy = true;
+        executor.execute(() -> run(dual, testDual, vehicleDual));
+    }
+
+    private void run(double[] dual, Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
+        Round round = null;
+        RuntimeException error = null;
+        try {
+            List<Column> columns = pricer.price(testDual, vehicleDual);
+            round = new Round(dual, pricer.getReducedCost(), pricer.isExact());
+            addColumns(columns);
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        synchronized (this) {
+            finished = round;
+            failure = error;
+            busy = false;
+            notifyAll();
+        }
+    }
+
+    private synchronized void addColumns(List<Column> columns) {
+        found.addAll(columns);
+        notifyAll();
+    }
+
+    // columns reported since the last call, possibly from earlier rounds
+    public synchronized List<Column> takeColumns() {
+        List<Column> result = new ArrayList<>(found);
+        found.clear();
+        return result;
+    }
+
+    // the round finished since the last call, null if none
+    public synchronized Round takeFinished() {
+        if (failure != null) {
+            RuntimeException e = failure;
+            failure = null;
+            throw e;
+        }
+        Round result = finished;
+        finished = null;
+        return result;
+    }
+
+    // block until columns are queued or the running round ends
+    public synchronized void await() throws InterruptedException {
+        while (found.isEmpty() && busy)
+            wait();
+    }
+
+    // waits for the running round before ending the pricer
+    public void end() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pricer.end();
+    }
+
+    public static class Round {
+        private final double[] dual;
+        private final double reducedCost;
+        private final boolean exact;
+
+        private Round(double[] dual, double reducedCost, boolean exact) {
+            this.dual = dual;
+            this.reducedCost = reducedCost;
+            this.exact = exact;
+        }
+
+        // the duals the round priced at
+        public double[] getDual() {
+            return dual;
+        }
+
+        public double getReducedCost() {
+            return reducedCost;
+        }
+
+        public boolean isExact() {
+            return exact;
+        }
+    }
+}
@@ -1,38 +1,98 @@
 package algorithm.pricer;
 
 import algorithm.Column;
+import algorithm.branching.BranchingRule;
+import algorithm.branching.PairRule;
+import algorithm.branching.ReleaseRule;
 import data.DataInstance;
 import data.TestRequest;
+import ilog.concert.IloConstraint;
 import ilog.concert.IloException;
+import ilog.concert.IloIntExpr;
 import ilog.concert.IloIntVar;
 import ilog.concert.IloNumExpr;
 import ilog.concert.IloRange;
 import ilog.cp.*;
+import utils.CompatibilityIndex;
 import utils.Global;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.IntStream;
 
 /**
  * Yuhui Shi - University of Michigan
  * academic use only
+ *
+ * The model, tardiness included, is built on the first call. Later calls
+ * only swap the reduced cost constraint carrying the new duals (and the
+ * branching rule constraints when they change), so the model does not grow.
+ *
+ * Built for one release, the vehicle is fixed and every start time is
+ * bounded below by that release, see ReleaseSplitPricer.
+ *
+ * Every test starts as early as the vehicle, the previous test and its own
+ * release allow, as in Column, so a solution is fixed by its tests.
+ *
+ * By default every column costs one solve, with the columns found so far
+ * excluded. With setSolutionIteration(true) one search guided by the duals
+ * (vehicle, then tests by dual) is walked with next() and yields the whole
+ * batch, each solution a new sequence; the time and fail limits bound that
+ * walk.
  */
 @SuppressWarnings("Duplicates")
 public class CPOPricer implements Pricer {
 
     private double reducedCost;
     private IloCP solver;
+    private volatile boolean aborted;
     private IloRange negReducedConstContr;
     private IloIntVar[] testAtPosition;
     private IloIntVar[] startTimeAtPosition;
     private IloIntVar selectVehicle;
     private IloIntVar[] durAtPosition;
+    private IloIntExpr totalTardiness;
+    private int maxColumns;
+    private boolean exact;
+    private List<BranchingRule> rules;
+    private List<IloConstraint> ruleConstrs;
+    private boolean rulesChanged;
+    private final Integer fixedRelease; // null: any release
+    private boolean iterateSolutions;
+    private double timeLimit; // seconds per call, 0 for none
+    private int failLimit;    // per call, 0 for none
+    private int numWorkers;   // 0 keeps the CP Optimizer default
 
     public CPOPricer() {
+        this(null);
+    }
+
+    // only columns on the given release
+    public CPOPricer(int release) {
+        this(Integer.valueOf(release));
+    }
+
+    private CPOPricer(Integer fixedRelease) {
+        this.fixedRelease = fixedRelease;
         this.reducedCost = Double.MAX_VALUE;
+        this.maxColumns = 1;
+        this.rules = new ArrayList<>();
+        this.ruleConstrs = new ArrayList<>();
+    }
+
+    // collect the batch from one search with startNewSearch / next instead of one solve per column
+    public void setSolutionIteration(boolean iterateSolutions) {
+        this.iterateSolutions = iterateSolutions;
+    }
+
+    // limits of one price call, 0 for none. A call stopped by a limit is not exact.
+    public void setSearchLimits(double timeLimitSeconds, int failLimit) {
+        this.timeLimit = timeLimitSeconds;
+        this.failLimit = failLimit;
+    }
+
+    public void setWorkers(int numWorkers) {
+        this.numWorkers = numWorkers;
     }
 
     private IloCP buildBaseSolver(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
@@ -65,11 +125,18 @@ public class CPOPricer implements Pricer {
             // variables
             testAtPosition = new IloIntVar[numSlots];
             startTimeAtPosition = new IloIntVar[numSlots];
-            selectVehicle = model.intVar(0, numVehicles - 1);
+            int firstVehicle = 0;
+            int lastVehicle = numVehicles - 1;
+            int earliestStart = horizonStart;
+            if (fixedRelease != null) {
+                firstVehicle = lastVehicle = DataInstance.getInstance().getVehicleReleaseList().indexOf(fixedRelease);
+                earliestStart = Math.max(horizonStart, fixedRelease);
+            }
+            selectVehicle = model.intVar(firstVehicle, lastVehicle);
             // initialization
             for (int p = 0; p < numSlots; p++) {
                 testAtPosition[p] = model.intVar(0, numTests, "test_at_position");
-                startTimeAtPosition[p] = model.intVar(horizonStart, horizonEnd, "starttime_at_position");
+                startTimeAtPosition[p] = model.intVar(earliestStart, horizonEnd, "starttime_at_position");
             }
 
             // aux variables
@@ -79,15 +146,26 @@ public class CPOPricer implements Pricer {
                 model.addEq(durAtPosition[p], model.element(durArr, testAtPosition[p]));
             }
 
-            // constraints
-            // start after the selected vehicle is released
-            model.add(model.ge(startTimeAtPosition[0],
-                    model.element(releaseArr, selectVehicle)));
+            // tardiness at each position, the dummy test is due at the horizon end
+            IloIntVar[] tardinessAtPosition = new IloIntVar[numSlots];
+            for (int p = 0; p < numSlots; p++) {
+                tardinessAtPosition[p] = model.intVar(0, horizonEnd, "tardiness_at_position");
+                model.addEq(tardinessAtPosition[p],
+                        model.max(0,
+                                model.diff(model.sum(startTimeAtPosition[p], durAtPosition[p]),
+                                        model.element(deadlineArr, testAtPosition[p]))));
+            }
+            totalTardiness = model.sum(tardinessAtPosition);
 
-            // release time of tests, need fix
+            // constraints
+            // start once the vehicle is released or the previous test is done, but not before the
+            // release of the test allows; the dummy test starts when the previous one ends
             for (int p = 0; p < numSlots; p++) {
-                model.addGe(model.sum(startTimeAtPosition[p], model.element(prepArr, testAtPosition[p])),
-                        model.element(testReleaseArr, testAtPosition[p]));
+                IloIntExpr ready = p == 0 ? model.element(releaseArr, selectVehicle)
+                        : model.sum(startTimeAtPosition[p - 1], durAtPosition[p - 1]);
+                model.addEq(startTimeAtPosition[p], model.max(ready,
+                        model.diff(model.element(testReleaseArr, testAtPosition[p]),
+                                model.element(prepArr, testAtPosition[p]))));
             }
 
             // each test appear at once in the column
@@ -104,38 +182,21 @@ public class CPOPricer implements Pricer {
                 }
             }
 
-            // start time between two positions
-            for (int p = 0; p < numSlots - 1; p++) {
-                model.addGe(startTimeAtPosition[p + 1],
-                        model.sum(startTimeAtPosition[p], durAtPosition[p]));
-            }
-
-            // if a position is left blank, then the start time is == previous end time
-            for (int p = 1; p < numSlots; p++) {
-                model.add(model.ifThen(model.eq(testAtPosition[p], numTests),
-                        model.eq(startTimeAtPosition[p],
-                                model.sum(startTimeAtPosition[p - 1], durAtPosition[p - 1]))));
-            }
-
             // compatibility
+            CompatibilityIndex compIndex = CompatibilityIndex.get();
             for (int i = 0; i < numTests; i++) {
-                int tid1 = tidArr[i];
-
                 for (int j = i + 1; j < numTests; j++) {
-                    int tid2 = tidArr[j];
-
-                    if (!DataInstance.getInstance().getRelation(tid1, tid2)
-                            && !DataInstance.getInstance().getRelation(tid2, tid1))
+                    if (!compIndex.canFollow(i, j) && !compIndex.canFollow(j, i))
                         model.addLe(model.sum(model.count(testAtPosition, i), model.count(testAtPosition, j)),
                                 1);
-                    else if (!DataInstance.getInstance().getRelation(tid1, tid2)) {
+                    else if (!compIndex.canFollow(i, j)) {
                         for (int p = 0; p < numSlots; p++) {
                             for (int q = p + 1; q < numSlots; q++) {
                                 model.add(model.ifThen(model.eq(testAtPosition[p], i),
                                         model.neq(testAtPosition[q], j)));
                             }
                         }
-                    } else if (!DataInstance.getInstance().getRelation(tid2, tid1)) {
+                    } else if (!compIndex.canFollow(j, i)) {
                         for (int p = 0; p < numSlots; p++) {
                             for (int q = p + 1; q < numSlots; q++) {
                                 model.add(model.ifThen(model.eq(testAtPosition[p], j),
@@ -146,8 +207,6 @@ public class CPOPricer implements Pricer {
                 }
             }
 
-            negReducedConstContr = model.addLe(model.numExpr(), -0.001);
-
         } catch (IloException ex) {
             ex.printStackTrace();
         }
@@ -160,21 +219,28 @@ public class CPOPricer implements Pricer {
         this.solver.end();
     }
 
+    // number of objects in the CP model, the same after every call once the model is built
+    public int getModelSize() {
+        int size = 0;
+        if (solver != null) {
+            for (Iterator<?> it = solver.iterator(); it.hasNext(); it.next())
+                size++;
+        }
+        return size;
+    }
+
     @Override
     public List<Column> price(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
 
         List<Column> candidates = new ArrayList<>();
+        aborted = false;
 
         // parameters
         final int numTests = DataInstance.getInstance().getTestArr().size();
         final int numSlots = Global.MAX_HITS;
-        final int horizonEnd = DataInstance.getInstance().getHorizonEnd();
         final int[] releaseArr = DataInstance.getInstance().getVehicleReleaseList().stream().mapToInt(Integer::intValue)
                 .toArray();
         final int[] tidArr = DataInstance.getInstance().getTidList().stream().mapToInt(Integer::intValue).toArray();
-        final int[] deadlineArr = Arrays.copyOf(DataInstance.getInstance().getTestArr().stream()
-                .mapToInt(TestRequest::getDeadline).toArray(), numTests + 1);
-        deadlineArr[deadlineArr.length - 1] = horizonEnd;
         final double[] testDualArr = Arrays.copyOf(
                 DataInstance.getInstance().getTidList().stream()
                         .mapToDouble(e -> testDual.get(e) * -1) //.mapToInt(e -> (int) Math.round(e)) // reverted the sign
@@ -194,86 +260,31 @@ public class CPOPricer implements Pricer {
                 this.solver.remove(this.negReducedConstContr);
 
             model = this.solver;
-            // negative reduced cost
-            IloNumExpr reducedCostExpr = model.numExpr();
-            reducedCostExpr = model.sum(reducedCostExpr, model.constant(Global.VEHICLE_COST));
-
+            if (rulesChanged)
+                postBranchingRules(releaseArr);
+            // negative reduced cost, the only part that depends on the duals
+            IloNumExpr reducedCostExpr = model.sum(model.constant(Global.VEHICLE_COST), totalTardiness);
             for (int p = 0; p < numSlots; p++) {
-                // tardiness
-                IloIntVar tardiness = model.intVar(0, horizonEnd);
-                model.addEq(tardiness,
-                        model.max(0,
-                                model.diff(model.sum(startTimeAtPosition[p], durAtPosition[p]),
-                                        model.element(deadlineArr, testAtPosition[p]))));
-                reducedCostExpr = model.sum(reducedCostExpr, tardiness);
                 // test dual contribution
                 reducedCostExpr = model.sum(reducedCostExpr, model.element(testDualArr, testAtPosition[p]));
             }
             // vehicle dual contribution
             reducedCostExpr = model.sum(reducedCostExpr, model.element(vehicleDualArr, selectVehicle));
 
-            // negative reduced cost constraints
-            model.addLe(reducedCostExpr, -0.001);
+            // negative reduced cost constraint, replaced on the next call
+            this.negReducedConstContr = model.addLe(reducedCostExpr, -0.001);
 
             model.setOut(null);
+            applyParameters();
 
-
-            // ================================ searching strategy======================================================
-            IloSearchPhase[] searchPhases = new IloSearchPhase[3];
-
-            // first fix the assignment of vehicle
-            // variable selector = None. only one variable
-            // value selector = smallest dual contribution first, if tie, smaller release first
-            IloValueSelector[] vehicleValueSelector = new IloValueSelector[2];
-            final int numVehicles = DataInstance.getInstance().getVehicleReleaseList().size();
-            vehicleValueSelector[0] = model.selectSmallest(
-                    model.explicitValueEval(IntStream.range(0, numVehicles).toArray(),
-                            vehicleDualArr));  // smallest vehicle dual contribution first
-            vehicleValueSelector[1] = model.selectSmallest(model.value());
-            IloSearchPhase vehicleSearch = model.searchPhase(new IloIntVar[]{selectVehicle},
-                    model.intVarChooser(model.selectRandomVar()),
-                    model.intValueChooser(vehicleValueSelector));
-            searchPhases[0] = vehicleSearch;
-
-            // fix the test assignment
-            // select the test with the least dual contribution
-            IloValueSelector testValueSelector = model.selectSmallest(model.explicitValueEval(
-                    IntStream.rangeClosed(0, numTests).toArray(),
-                    testDualArr));
-            // select the variable on smaller slots first
-            IloVarSelector testVarSelector = model.selectSmallest(model.varIndex(testAtPosition));
-            IloSearchPhase testSearch = model.searchPhase(testAtPosition,
-                    model.intVarChooser(testVarSelector),
-                    model.intValueChooser(testValueSelector));
-            searchPhases[1] = testSearch;
-
-            // fix the start time of tests
-            IloValueSelector startTimeValueSelector = model.selectSmallest(model.value()); // start as early as possible
-            // select the variables on smaller slots first
-            IloVarSelector startTimeVarSelector = model.selectSmallest(model.varIndex(startTimeAtPosition));
-            IloSearchPhase startTimeSearchPhase = model.searchPhase(startTimeAtPosition,
-                    model.intVarChooser(startTimeVarSelector),
-                    model.intValueChooser(startTimeValueSelector));
-            searchPhases[2] = startTimeSearchPhase;
-
-            // fix all auxiliary variables
-//            model.setSearchPhases(searchPhases);
-
-            // solve the problem
-            if (model.solve()) {
-                // parse the solution
-                this.reducedCost = model.getValue(reducedCostExpr);
-                List<Integer> seq = new ArrayList<>();
-                int vehicleIdx = (int) Math.round(model.getValue(selectVehicle));
-                int colRelease = releaseArr[vehicleIdx];
-                for (int p = 0; p < numSlots; p++) {
-                    int tidIdx = (int) Math.round(model.getValue(testAtPosition[p]));
-                    if (tidIdx != numTests)
-                        seq.add(tidArr[tidIdx]);
-                }
-                Column newcol = new Column(seq, colRelease);
-                candidates.add(newcol);
-            }
+            if (iterateSolutions)
+                iterateSolutions(reducedCostExpr, testDualArr, vehicleDualArr, releaseArr, tidArr, candidates);
+            else
+                solveOneByOne(reducedCostExpr, releaseArr, tidArr, candidates);
+            // the search only looks for negative columns, it proves a bound only when it finds none
+            this.exact = candidates.isEmpty() && !aborted && timeLimit <= 0 && failLimit <= 0;
+            if (this.exact)
+                this.reducedCost = Double.MAX_VALUE;
 
 
         } catch (IloException e1) {
@@ -282,8 +293,160 @@ public class CPOPricer implements Pricer {
         return candidates;
     }
 
+    private void applyParameters() throws IloException {
+        solver.setParameter(IloCP.DoubleParam.TimeLimit, timeLimit > 0 ? timeLimit : IloCP.Infinity);
+        solver.setParameter(IloCP.IntParam.FailLimit, failLimit > 0 ? failLimit : Integer.MAX_VALUE);
+        if (numWorkers > 0)
+            solver.setParameter(IloCP.IntParam.Workers, numWorkers);
+    }
+
+    // solve the problem, excluding every column found so far from the next solve
+    private void solveOneByOne(IloNumExpr reducedCostExpr, int[] releaseArr, int[] tidArr,
+                               List<Column> candidates) throws IloException {
+        List<IloConstraint> noGoods = new ArrayList<>();
+        while (candidates.size() < maxColumns && !aborted && solver.solve()) {
+            Column newcol = parseColumn(reducedCostExpr, releaseArr, tidArr, candidates.isEmpty());
+            candidates.add(newcol);
+
+            int vehicleIdx = (int) Math.round(solver.getValue(selectVehicle));
+            IloConstraint noGood = solver.neq(selectVehicle, vehicleIdx);
+            for (int p = 0; p < testAtPosition.length; p++) {
+                int tidIdx = (int) Math.round(solver.getValue(testAtPosition[p]));
+                noGood = solver.or(noGood, solver.neq(testAtPosition[p], tidIdx));
+            }
+            solver.add(noGood);
+            noGoods.add(noGood);
+        }
+        for (IloConstraint noGood : noGoods)
+            solver.remove(noGood);
+    }
+
+    // walk the solutions of one dual guided search, keeping the distinct columns
+    private void iterateSolutions(IloNumExpr reducedCostExpr, double[] testDualArr, double[] vehicleDualArr,
+                                  int[] releaseArr, int[] tidArr, List<Column> candidates) throws IloException {
+        solver.setSearchPhases(searchPhases(testDualArr, vehicleDualArr));
+        int searchType = solver.getParameter(IloCP.IntParam.SearchType);
+        solver.setParameter(IloCP.IntParam.SearchType, IloCP.ParameterValues.DepthFirst);
+        Set<Column> seen = new HashSet<>();
+        solver.startNewSearch();
+        try {
+            while (candidates.size() < maxColumns && !aborted && solver.next()) {
+                Column newcol = parseColumn(reducedCostExpr, releaseArr, tidArr, candidates.isEmpty());
+                if (seen.add(newcol))
+                    candidates.add(newcol);
+            }
+        } finally {
+            solver.endSearch();
+            solver.setParameter(IloCP.IntParam.SearchType, searchType);
+        }
+    }
+
+    // the column of the current solution, its reduced cost goes into this.reducedCost
+    private Column parseColumn(IloNumExpr reducedCostExpr, int[] releaseArr, int[] tidArr,
+                               boolean first) throws IloException {
+        final int numTests = tidArr.length;
+        double colReducedCost = solver.getValue(reducedCostExpr);
+        this.reducedCost = first ? colReducedCost : Math.min(this.reducedCost, colReducedCost);
+        List<Integer> seq = new ArrayList<>();
+        int vehicleIdx = (int) Math.round(solver.getValue(selectVehicle));
+        for (IloIntVar test : testAtPosition) {
+            int tidIdx = (int) Math.round(solver.getValue(test));
+            if (tidIdx != numTests)
+                seq.add(tidArr[tidIdx]);
+        }
+        return new Column(seq, releaseArr[vehicleIdx]);
+    }
+
+    // vehicle with the smallest dual contribution first, then the tests with the largest dual on the
+    // earlier positions; the start times follow
+    private IloSearchPhase[] searchPhases(double[] testDualArr, double[] vehicleDualArr) throws IloException {
+        final int numTests = testDualArr.length - 1;
+        final int numVehicles = vehicleDualArr.length;
+        IloSearchPhase[] searchPhases = new IloSearchPhase[2];
+
+        // value selector = smallest dual contribution first, if tie, smaller release first
+        IloValueSelector[] vehicleValueSelector = new IloValueSelector[2];
+        vehicleValueSelector[0] = solver.selectSmallest(
+                solver.explicitValueEval(IntStream.range(0, numVehicles).toArray(), vehicleDualArr));
+        vehicleValueSelector[1] = solver.selectSmallest(solver.value());
+        searchPhases[0] = solver.searchPhase(new IloIntVar[]{selectVehicle},
+                solver.intVarChooser(solver.selectRandomVar()),
+                solver.intValueChooser(vehicleValueSelector));
+
+        // the dual contributions are negated, the smallest is the largest dual
+        IloValueSelector testValueSelector = solver.selectSmallest(solver.explicitValueEval(
+                IntStream.rangeClosed(0, numTests).toArray(), testDualArr));
+        IloVarSelector testVarSelector = solver.selectSmallest(solver.varIndex(testAtPosition));
+        searchPhases[1] = solver.searchPhase(testAtPosition,
+                solver.intVarChooser(testVarSelector),
+                solver.intValueChooser(testValueSelector));
+        return searchPhases;
+    }
+
+    // replace the constraints of the previous branching rules by the current ones
+    private void postBranchingRules(int[] releaseArr) throws IloException {
+        for (IloConstraint constr : ruleConstrs)
+            solver.remove(constr);
+        ruleConstrs.clear();
+        for (BranchingRule rule : rules) {
+            IloConstraint constr;
+            if (rule instanceof PairRule) {
+                PairRule pair = (PairRule) rule;
+                IloIntExpr first = solver.count(testAtPosition, pair.getFirst());
+                IloIntExpr second = solver.count(testAtPosition, pair.getSecond());
+                constr = pair.isTogether() ? solver.eq(first, second) : solver.le(solver.sum(first, second), 1);
+            } else if (rule instanceof ReleaseRule) {
+                ReleaseRule releaseRule = (ReleaseRule) rule;
+                int vehicleIdx = IntStream.range(0, releaseArr.length)
+                        .filter(v -> releaseArr[v] == releaseRule.getRelease()).findFirst().orElse(-1);
+                IloConstraint covered = solver.ge(solver.count(testAtPosition, releaseRule.getTest()), 1);
+                constr = solver.ifThen(covered, releaseRule.isAssigned()
+                        ? solver.eq(selectVehicle, vehicleIdx) : solver.neq(selectVehicle, vehicleIdx));
+            } else {
+                throw new IllegalArgumentException("Unsupported branching rule: " + rule);
+            }
+            solver.add(constr);
+            ruleConstrs.add(constr);
+        }
+        rulesChanged = false;
+    }
+
+    @Override
+    public void setBranchingRules(List<BranchingRule> rules) {
+        this.rules = new ArrayList<>(rules);
+        this.rulesChanged = true;
+    }
+
+    @Override
+    public void setMaxColumns(int maxColumns) {
+        this.maxColumns = maxColumns;
+    }
+
+    @Override
+    public void setColumnListener(Consumer<List<Column>> listener) {
+        // the columns are only known once price returns
+    }
+
     @Override
     public double getReducedCost() {
         return this.reducedCost;
     }
+
+    @Override
+    public void abort() {
+        aborted = true;
+        IloCP cp = this.solver;
+        if (cp == null)
+            return;
+        try {
+            cp.abortSearch();
+        } catch (IloException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean isExact() {
+        return this.exact;
+    }
 }
@@ -5,17 +5,21 @@ import algorithm.Column;
 import data.DataInstance;
 import data.TestRequest;
 import facility.ColumnWithTiming;
+import facility.DayDualSnapshot;
+import facility.TimingOptimizer;
 import ilog.concert.IloException;
 import ilog.concert.IloIntVar;
 import ilog.concert.IloNumExpr;
 import ilog.concert.IloRange;
 import ilog.cp.IloCP;
 import ilog.cp.IloSearchPhase;
+import utils.CompatibilityIndex;
 import utils.Global;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Yuhui Shi - University of Michigan
@@ -25,6 +29,8 @@ import java.util.stream.IntStream;
 public class CPOPricerFacility implements PricerFacility {
 
     private double reducedCost;
+    private boolean exact;
+    private int maxColumns;
     private final Pricer firstStagePricer;
     private IloCP solver;
     private IloIntVar[] testAtPosition;
@@ -36,11 +42,18 @@ public class CPOPricerFacility implements PricerFacility {
         this.reducedCost = Double.MAX_VALUE;
         this.firstStagePricer = new EnumPricer();
         this.solver = null;
+        this.maxColumns = 1;
+    }
+
+    // the best timing of the sequence found by the search comes first, then up to maxColumns - 1
+    // other negative timings of it
+    public void setMaxColumns(int maxColumns) {
+        this.maxColumns = maxColumns;
     }
 
     private List<ColumnWithTiming> firstStagePrice(Map<Integer, Double> testDual,
                                                    Map<Integer, Double> vehicleDual,
-                                                   Map<Integer, Double> dayDual) {
+                                                   DayDualSnapshot dayDual) {
         // 1st stage pricer
         List<Column> firstStageCandidates = this.firstStagePricer.price(testDual, vehicleDual);
         System.out.println("Pricing lb: " + this.firstStagePricer.getReducedCost());
@@ -49,17 +62,17 @@ public class CPOPricerFacility implements PricerFacility {
             return null; // no solution to the relaxation, terminate
         }
         else {
-            Column candidate = firstStageCandidates.get(0);
-            ColumnWithTiming candidateWithTiming = new ColumnWithTiming(candidate.getSeq(), candidate.getRelease());
-
-            List<ColumnWithTiming> otherVersions = createMultipleVersion(candidateWithTiming);
-            // check if any of them negative reduced cost
-            List<ColumnWithTiming> usefulCols = otherVersions.stream()
-                    .filter(c -> reducedCost(c, testDual, vehicleDual, dayDual) < -0.001)
-                    .collect(Collectors.toList());
+            // best timing of each candidate, kept if it still prices out with the day duals
+            List<ColumnWithTiming> usefulCols = new ArrayList<>();
+            for (Column candidate : firstStageCandidates) {
+                ColumnWithTiming timed = TimingOptimizer.bestTiming(candidate.getSeq(), candidate.getRelease(),
+                        dayDual);
+                if (timed != null && reducedCost(timed, testDual, vehicleDual, dayDual) < -0.001)
+                    usefulCols.add(timed);
+            }
             if (usefulCols.size()>0) {
                 // update the reduced cost
-                this.reducedCost = usefulCols.stream().mapToDouble(c->EnumPricer.reducedCost(c,testDual,vehicleDual))
+                this.reducedCost = usefulCols.stream().mapToDouble(c -> reducedCost(c, testDual, vehicleDual, dayDual))
                         .min().getAsDouble();
                 System.out.println("Pricing heuristic find " + usefulCols.size() + " cols");
                 return usefulCols;
@@ -192,10 +205,11 @@ public class CPOPricerFacility implements PricerFacility {
     }
 
     @Override
-    public List<ColumnWithTiming> price(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual, Map<Integer, Double> dayDual) {
+    public List<ColumnWithTiming> price(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual, DayDualSnapshot dayDual) {
 
 //        List<ColumnWithTiming> firstStageCandidate = firstStagePrice(testDual, vehicleDual, dayDual);
         List<ColumnWithTiming> candidates = new ArrayList<>();
+        this.exact = false;
 
 //        if (null == firstStageCandidate)
 //            return candidates;
@@ -230,9 +244,6 @@ public class CPOPricerFacility implements PricerFacility {
         final double[] vehicleDualArr = DataInstance.getInstance().getVehicleReleaseList().stream()
                 .mapToDouble(e -> vehicleDual.get(e) * -1)//.mapToInt(e -> (int) Math.round(e)) // reverted the sign
                 .toArray();
-        Map<Integer, Double> negDayDual = new HashMap<>();
-        dayDual.keySet().forEach(e -> negDayDual.put(e, -dayDual.get(e)));
-
 
         if (null == this.solver)
             this.solver = buildCPmodel();
@@ -269,17 +280,8 @@ public class CPOPricerFacility implements PricerFacility {
             for (int t = 0; t < numTests; t++) {
                 int tid = tidArr[t];
                 TestRequest test = DataInstance.getInstance().getTestById(tid);
-                for (int d = 0; d < numDays; d++) {
-                    int start = d + horizonStart;
-                    int tatStart = start + test.getPrep();
-                    int tatEnd = tatStart + test.getTat();
-                    // add all duals from tatStart -> tatEnd
-                    final double[] totalDual = {0};
-                    IntStream.range(tatStart, tatEnd).forEach(e ->
-                            totalDual[0] += negDayDual.getOrDefault(e, 0.0)
-                    );
-                    dayContrib[t * numDays + d] = totalDual[0];
-                }
+                for (int d = 0; d < numDays; d++)
+                    dayContrib[t * numDays + d] = dayDual.crashPenalty(test, d + horizonStart);
             }
             for (int p = 0; p < numSlots; p++) {
                 reducedCostExpr = model.sum(reducedCostExpr,
@@ -321,11 +323,19 @@ public class CPOPricerFacility implements PricerFacility {
                 }
                 ColumnWithTiming newCol = new ColumnWithTiming(seq, colRelease,
                         startTimeMap);
-                List<ColumnWithTiming> newColOtherVersions = createMultipleVersion(newCol);
-//                candidates.add(newCol);
-                candidates.addAll(newColOtherVersions);
+                // the search stops at the first timing it finds, retime the sequence optimally
+                ColumnWithTiming bestCol = TimingOptimizer.bestTiming(seq, colRelease, dayDual);
+                final ColumnWithTiming first = bestCol != null ? bestCol : newCol;
+                candidates.add(first);
+                // the master may mix several timings of one sequence to spread its crash days
+                timedVersions(newCol, testDual, vehicleDual, dayDual, -0.001)
+                        .filter(c -> !c.equals(first))
+                        .limit(maxColumns - 1)
+                        .forEach(candidates::add);
             } else {
+                // no time limit, so the search proved that no negative column exists
                 this.reducedCost = Double.MAX_VALUE;
+                this.exact = true;
             }
 
         } catch (IloException e) {
@@ -335,67 +345,18 @@ public class CPOPricerFacility implements PricerFacility {
         return candidates;
     }
 
-    private List<ColumnWithTiming> createMultipleVersion(ColumnWithTiming rawCol) {
-        List<ColumnWithTiming> result = new ArrayList<>();
-        final int seqLength = rawCol.getSeq().size();
-        int[] possibleStartUB = new int[seqLength];
-        int[] possibleStartLB = new int[seqLength];
-        int[] durArr = rawCol.getSeq().stream()
-                .mapToInt(tid->DataInstance.getInstance().getTestById(tid).getDur()).toArray();
-
-        for (int i = 0; i < seqLength; i++) {
-            TestRequest test = DataInstance.getInstance().getTestById(rawCol.getSeq().get(i));
-            possibleStartLB[i] = rawCol.getStartTimeByTid(rawCol.getSeq().get(i));
-            int ub = Math.max(test.getDeadline() - test.getDur(),
-                    possibleStartLB[i]);
-            possibleStartUB[i] = ub;
-        }
-
-        List<List<Integer>> startTimeComb = new ArrayList<>();
-        List<List<Integer>> prev, current;
-        prev = new ArrayList<>();
-        current = new ArrayList<>();
-        for (int i = 0; i < seqLength; i++) {
-            current.clear();
-            for (int e = possibleStartLB[i]; e <= possibleStartUB[i]; e++) {
-                if (i==0)
-                    current.add(Collections.singletonList(e));
-                else {
-                    for (List<Integer> time : prev) {
-                        List<Integer> newTime = new ArrayList<>(time);
-                        newTime.add(e);
-                        current.add(newTime);
-                    }
-                }
-
-            }
-            prev.clear();
-            prev.addAll(current);
-        }
-        startTimeComb.addAll(current);
-
-        List<List<Integer>> validTimeComb = startTimeComb.stream()
-                .filter(l -> isValidTime(l, durArr)).collect(Collectors.toList());
-
-        for (List<Integer> s : validTimeComb) {
-            Map<Integer,Integer> startTimeMap = new HashMap<>();
-            for (int i = 0; i < seqLength; i++) {
-                startTimeMap.put(rawCol.getSeq().get(i),
-                        s.get(i));
-            }
-            result.add(new ColumnWithTiming(rawCol.getSeq(), rawCol.getRelease(),
-                    startTimeMap));
-        }
-
-        return result;
-    }
-
-    private static boolean isValidTime(List<Integer> startTime, int[] dur) {
-        for (int i = 0; i < startTime.size()-1; i++) {
-            if (startTime.get(i) + dur[i] > startTime.get(i+1))
-                return false;
-        }
-        return true;
+    // the versions of the column with every test starting between its current start and its latest
+    // on-time start, in sequence order and with a reduced cost below maxReducedCost, generated lazily.
+    // No start puts a crash window past horizonEnd.
+    public static Stream<ColumnWithTiming> timedVersions(ColumnWithTiming rawCol,
+                                                         Map<Integer, Double> testDual,
+                                                         Map<Integer, Double> vehicleDual,
+                                                         DayDualSnapshot dayDual,
+                                                         double maxReducedCost) {
+        Iterator<ColumnWithTiming> versions = new TimedVersionIterator(rawCol, testDual, vehicleDual, dayDual,
+                maxReducedCost);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(versions,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
     }
 
     private IloCP buildCPmodel() {
@@ -416,6 +377,10 @@ public class CPOPricerFacility implements PricerFacility {
         final int[] tidArr = DataInstance.getInstance().getTidList().stream().mapToInt(Integer::intValue).toArray();
         final int[] testReleaseArr = Arrays.copyOf(DataInstance.getInstance().getTestArr()
                 .stream().mapToInt(TestRequest::getRelease).toArray(), numTests + 1);
+        // last start with the crash window inside the capacity rows
+        final int[] latestStartArr = Arrays.copyOf(DataInstance.getInstance().getTestArr().stream()
+                .mapToInt(t -> horizonEnd - t.getPrep() - t.getTat()).toArray(), numTests + 1);
+        latestStartArr[latestStartArr.length - 1] = horizonEnd;
 
         final int[] deadlineArr = Arrays.copyOf(DataInstance.getInstance().getTestArr().stream()
                 .mapToInt(TestRequest::getDeadline).toArray(), numTests + 1);
@@ -448,6 +413,11 @@ public class CPOPricerFacility implements PricerFacility {
                         model.element(testReleaseArr, testAtPosition[p]));
             }
 
+            // crash windows end within the horizon
+            for (int p = 0; p < numSlots; p++) {
+                model.addLe(startTimeAtPosition[p], model.element(latestStartArr, testAtPosition[p]));
+            }
+
             // each test appear at once in the column
             for (int t = 0; t < numTests; t++) {
                 model.addLe(model.count(testAtPosition, t),
@@ -476,24 +446,20 @@ public class CPOPricerFacility implements PricerFacility {
             }
 
             // compatibility
+            CompatibilityIndex compIndex = CompatibilityIndex.get();
             for (int i = 0; i < numTests; i++) {
-                int tid1 = tidArr[i];
-
                 for (int j = i + 1; j < numTests; j++) {
-                    int tid2 = tidArr[j];
-
-                    if (!DataInstance.getInstance().getRelation(tid1, tid2)
-                            && !DataInstance.getInstance().getRelation(tid2, tid1))
+                    if (!compIndex.canFollow(i, j) && !compIndex.canFollow(j, i))
                         model.addLe(model.sum(model.count(testAtPosition, i), model.count(testAtPosition, j)),
                                 1);
-                    else if (!DataInstance.getInstance().getRelation(tid1, tid2)) {
+                    else if (!compIndex.canFollow(i, j)) {
                         for (int p = 0; p < numSlots; p++) {
                             for (int q = p + 1; q < numSlots; q++) {
                                 model.add(model.ifThen(model.eq(testAtPosition[p], i),
                                         model.neq(testAtPosition[q], j)));
                             }
                         }
-                    } else if (!DataInstance.getInstance().getRelation(tid2, tid1)) {
+                    } else if (!compIndex.canFollow(j, i)) {
                         for (int p = 0; p < numSlots; p++) {
                             for (int q = p + 1; q < numSlots; q++) {
                                 model.add(model.ifThen(model.eq(testAtPosition[p], j),
@@ -511,16 +477,109 @@ public class CPOPricerFacility implements PricerFacility {
 
     }
 
-    private static double reducedCost(ColumnWithTiming col, Map<Integer, Double> testDual,
+    public static double reducedCost(ColumnWithTiming col, Map<Integer, Double> testDual,
                                       Map<Integer, Double> vehicleDual,
-                                      Map<Integer, Double> dayDual) {
-        double reducedCostWithoutDayDual =
-                EnumPricer.reducedCost(col, testDual, vehicleDual);
+                                      DayDualSnapshot dayDual) {
+        double reducedCost = EnumPricer.reducedCost(col, testDual, vehicleDual);
         // facility duals
-        List<Integer> daysUsingFacility = col.daysHasCrash();
-        final double[] dayContrib = {0};
-        daysUsingFacility.forEach(e -> dayContrib[0] += dayDual.get(e));
-        return reducedCostWithoutDayDual - dayContrib[0];
+        int[] crashIntervals = col.getCrashIntervals();
+        for (int j = 0; j < crashIntervals.length; j += 2)
+            reducedCost += dayDual.penalty(crashIntervals[j], crashIntervals[j + 1]);
+        return reducedCost;
+    }
+
+    // depth first over the start times, position by position
+    private static class TimedVersionIterator implements Iterator<ColumnWithTiming> {
+        private final ColumnWithTiming rawCol;
+        private final double maxReducedCost;
+        private final int[] durArr;
+        private final int[] startLB;
+        private final int[] startUB;
+        private final double[][] stepCost;  // tardiness plus day duals by position and start - startLB
+        private final double[] remainingLB; // smallest step costs summed from a position on
+        private final double[] prefixCost;  // reduced cost of the positions before
+        private final int[] start;
+        private int depth;
+        private ColumnWithTiming next;
+
+        private TimedVersionIterator(ColumnWithTiming rawCol, Map<Integer, Double> testDual,
+                                     Map<Integer, Double> vehicleDual, DayDualSnapshot dayDual,
+                                     double maxReducedCost) {
+            this.rawCol = rawCol;
+            this.maxReducedCost = maxReducedCost;
+            final int seqLength = rawCol.getSeq().size();
+            this.durArr = new int[seqLength];
+            this.startLB = new int[seqLength];
+            this.startUB = new int[seqLength];
+            this.stepCost = new double[seqLength][];
+            this.remainingLB = new double[seqLength + 1];
+            this.prefixCost = new double[seqLength];
+            this.start = new int[seqLength];
+            final int horizonEnd = DataInstance.getInstance().getHorizonEnd();
+
+            boolean fits = true;
+            for (int i = 0; i < seqLength; i++) {
+                int tid = rawCol.getSeq().get(i);
+                TestRequest test = DataInstance.getInstance().getTestById(tid);
+                durArr[i] = test.getDur();
+                startLB[i] = rawCol.getStartTime(i);
+                startUB[i] = Math.min(Math.max(test.getDeadline() - test.getDur(), startLB[i]),
+                        horizonEnd - test.getPrep() - test.getTat());
+                fits &= startUB[i] >= startLB[i];
+                stepCost[i] = new double[Math.max(0, startUB[i] - startLB[i] + 1)];
+                for (int s = startLB[i]; s <= startUB[i]; s++) {
+                    stepCost[i][s - startLB[i]] = Math.max(0, s + test.getDur() - test.getDeadline())
+                            + dayDual.crashPenalty(test, s);
+                }
+            }
+            for (int i = seqLength - 1; i >= 0; i--)
+                remainingLB[i] = remainingLB[i + 1] + Arrays.stream(stepCost[i]).min().orElse(0);
+
+            if (seqLength > 0 && fits) {
+                prefixCost[0] = Global.VEHICLE_COST - vehicleDual.get(rawCol.getRelease())
+                        - rawCol.getSeq().stream().mapToDouble(testDual::get).sum();
+                start[0] = startLB[0] - 1;
+            } else {
+                depth = -1;
+            }
+            this.next = advance();
+        }
+
+        // the next start time assignment within the bound, null when exhausted
+        private ColumnWithTiming advance() {
+            final int seqLength = start.length;
+            while (depth >= 0) {
+                if (++start[depth] > startUB[depth]) {
+                    depth--;
+                    continue;
+                }
+                double cost = prefixCost[depth] + stepCost[depth][start[depth] - startLB[depth]];
+                if (cost + remainingLB[depth + 1] >= maxReducedCost)
+                    continue;
+                if (depth == seqLength - 1) {
+                    return new ColumnWithTiming(rawCol.getSeqIdx(), rawCol.getRelease(), start.clone());
+                }
+                // the next test starts once this one is done
+                prefixCost[depth + 1] = cost;
+                start[depth + 1] = Math.max(startLB[depth + 1], start[depth] + durArr[depth]) - 1;
+                depth++;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public ColumnWithTiming next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            ColumnWithTiming result = next;
+            next = advance();
+            return result;
+        }
     }
 
     @Override
@@ -528,6 +587,12 @@ public class CPOPricerFacility implements PricerFacility {
         return this.reducedCost;
     }
 
+    // the search stops at its first column, so only a round without one is exact
+    @Override
+    public boolean isExact() {
+        return this.exact;
+    }
+
     @Override
     public void end() {
         this.solver.end();
@@ -0,0 +1,84 @@
+package algorithm.pricer;
+
+import algorithm.Column;
+
+import java.util.*;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Collects the negative reduced cost columns found in one pricing round and
+ * hands back up to maxColumns of them, spread over different tests and releases.
+ */
+class CandidateColumns {
+
+    private static final double NEG_THRESHOLD = -0.001;
+    private static final int POOL_FACTOR = 4;
+
+    private final int maxColumns;
+    private final int poolSize;
+    private final PriorityQueue<Candidate> pool; // worst candidate on top
+
+    CandidateColumns(int maxColumns) {
+        this.maxColumns = maxColumns;
+        this.poolSize = poolSize(maxColumns);
+        this.pool = new PriorityQueue<>(poolSize + 1,
+                (c1, c2) -> Double.compare(c2.reducedCost, c1.reducedCost));
+    }
+
+    // number of candidates kept to pick maxColumns from
+    static int poolSize(int maxColumns) {
+        return maxColumns == 1 ? 1 : maxColumns * POOL_FACTOR;
+    }
+
+    // reduced cost a column has to beat to be kept
+    double threshold() {
+        return pool.size() < poolSize ? NEG_THRESHOLD : Math.min(NEG_THRESHOLD, pool.peek().reducedCost);
+    }
+
+    void offer(Column col, double reducedCost) {
+        if (reducedCost >= threshold())
+            return;
+        pool.add(new Candidate(col, reducedCost));
+        if (pool.size() > poolSize)
+            pool.poll();
+    }
+
+    List<Column> select() {
+        List<Candidate> sorted = new ArrayList<>(pool);
+        sorted.sort(Comparator.comparingDouble(c -> c.reducedCost));
+
+        List<Column> result = new ArrayList<>();
+        boolean[] picked = new boolean[sorted.size()];
+        Set<Integer> coveredTests = new HashSet<>();
+        Set<Integer> usedReleases = new HashSet<>();
+
+        // first pass: columns bringing a new test or a new release
+        for (int i = 0; i < sorted.size() && result.size() < maxColumns; i++) {
+            Column col = sorted.get(i).col;
+            if (usedReleases.contains(col.getRelease()) && coveredTests.containsAll(col.getSeq()))
+                continue;
+            picked[i] = true;
+            result.add(col);
+            usedReleases.add(col.getRelease());
+            coveredTests.addAll(col.getSeq());
+        }
+        // second pass: fill up with the most negative remaining ones
+        for (int i = 0; i < sorted.size() && result.size() < maxColumns; i++) {
+            if (!picked[i])
+                result.add(sorted.get(i).col);
+        }
+        return result;
+    }
+
+    private static class Candidate {
+        private final Column col;
+        private final double reducedCost;
+
+        private Candidate(Column col, double reducedCost) {
+            this.col = col;
+            this.reducedCost = reducedCost;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package algorithm.pricer;
+
+import algorithm.Column;
+import algorithm.branching.BranchingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Tries its pricers in order on the same duals and stops at the first one
+ * that returns columns, typically cheap heuristics first and an exact pricer
+ * last. The exact pricer then only runs once the heuristics are out of
+ * columns, near the end of column generation. The reduced cost and
+ * exactness are those of the last pricer called.
+ */
+public class CascadePricer implements Pricer {
+
+    private final List<Pricer> stages;
+    private final int[] numCalls;
+
+    private double reducedCost;
+    private boolean exact;
+    private volatile boolean aborted;
+
+    public CascadePricer(Pricer... stages) {
+        this(Arrays.asList(stages));
+    }
+
+    public CascadePricer(List<Pricer> stages) {
+        if (stages.isEmpty())
+            throw new IllegalArgumentException("A cascade needs at least one pricer");
+        this.stages = new ArrayList<>(stages);
+        this.numCalls = new int[stages.size()];
+        this.reducedCost = Double.MAX_VALUE;
+    }
+
+    @Override
+    public List<Column> price(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
+        aborted = false;
+        List<Column> cols = new ArrayList<>();
+        for (int k = 0; k < stages.size() && !aborted; k++) {
+            Pricer stage = stages.get(k);
+            numCalls[k]++;
+            cols = stage.price(testDual, vehicleDual);
+            reducedCost = stage.getReducedCost();
+            exact = stage.isExact() && !aborted;
+            if (!cols.isEmpty())
+                break;
+        }
+        return cols;
+    }
+
+    // how often each stage was called so far
+    public int[] getNumCalls() {
+        return numCalls.clone();
+    }
+
+    @Override
+    public double getReducedCost() {
+        return reducedCost;
+    }
+
+    @Override
+    public boolean isExact() {
+        return exact;
+    }
+
+    @Override
+    public void setMaxColumns(int maxColumns) {
+        stages.forEach(stage -> stage.setMaxColumns(maxColumns));
+    }
+
+    @Override
+    public void setBranchingRules(List<BranchingRule> rules) {
+        stages.forEach(stage -> stage.setBranchingRules(rules));
+    }
+
+    @Override
+    public void setColumnListener(Consumer<List<Column>> listener) {
+        stages.forEach(stage -> stage.setColumnListener(listener));
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+        stages.forEach(Pricer::abort);
+    }
+
+    @Override
+    public void end() {
+        stages.forEach(Pricer::end);
+    }
+}
@@ -1,41 +1,268 @@
 package algorithm.pricer;
 
 import algorithm.Column;
-import algorithm.ColumnGeneration;
+import algorithm.SequenceEnumerator;
+import algorithm.branching.BranchingRule;
+import data.DataInstance;
 import utils.Global;
+import utils.TestIndex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
 /**
  * Yuhui Shi - University of Michigan
  * academic use only
+ *
+ * Prices over the fully enumerated column pool. The pool is kept in flat
+ * primitive arrays so that one pricing round is a single allocation free pass.
+ *
+ * Columns are grouped in buckets of equal sequence length and release, sorted
+ * by cost. A column of length L cannot do better than
+ * VEHICLE_COST + cost - (sum of the L largest test duals) - vehicle dual,
+ * so the scan of a bucket stops at the first column whose bound is no longer
+ * interesting, and every column behind it is skipped.
  */
 public class EnumPricer implements Pricer {
-    private final List<Column> colList;
+
+    // tests of sequence s are seqTests[seqStart[s]] .. seqTests[seqStart[s + 1] - 1]
+    private final int[] seqStart;
+    private final int[] seqTests;
+    // column c is sequence colSeq[c] on release releaseArr[colRelease[c]]
+    private final int[] colSeq;
+    private final int[] colRelease;
+    private final double[] colCost;
+    private final int[] releaseArr;
+    // bucket b holds columns bucketStart[b] .. bucketStart[b + 1] - 1
+    private final int[] bucketStart;
+    private final int[] bucketLength;
+    private final int[] bucketRelease;
+
+    // per round scratch, reused between calls
+    private final double[] testDualArr;
+    private final double[] vehicleDualArr;
+    private final double[] sortedDualArr;
+    private final double[] bestDualSum; // bestDualSum[L]: sum of the L largest positive test duals
+    private final TopColumns[] chunkTops;
+    private final double[] chunkMin;
+
     private double reducedCost;
+    private int maxColumns;
+    private boolean exact;
+    private final boolean completePool; // every sequence up to Global.MAX_HITS tests
+    private volatile boolean aborted;
+    private List<BranchingRule> rules;
+    private boolean parallel;
+    private int numSegments;
+    private int nextSegment;
 
     public EnumPricer() {
-        colList = ColumnGeneration.enumInitCol(Global.MAX_HITS);
+        this(Global.MAX_HITS);
+    }
+
+    public EnumPricer(int maxLevel) {
+        List<int[]> seqList = SequenceEnumerator.enumerate(maxLevel);
+        completePool = maxLevel >= Global.MAX_HITS;
+        releaseArr = DataInstance.getInstance().getVehicleReleaseList().stream()
+                .mapToInt(Integer::intValue).toArray();
+
+        final int numSeq = seqList.size();
+        seqStart = new int[numSeq + 1];
+        for (int s = 0; s < numSeq; s++)
+            seqStart[s + 1] = seqStart[s] + seqList.get(s).length;
+        seqTests = new int[seqStart[numSeq]];
+        for (int s = 0; s < numSeq; s++)
+            System.arraycopy(seqList.get(s), 0, seqTests, seqStart[s], seqList.get(s).length);
+
+        // order the columns by length, release and cost
+        final int numCols = numSeq * releaseArr.length;
+        final int[] allSeq = new int[numCols];
+        final int[] allRelease = new int[numCols];
+        final double[] allCost = new double[numCols];
+        Integer[] order = new Integer[numCols];
+        int c = 0;
+        for (int s = 0; s < numSeq; s++) {
+            for (int r = 0; r < releaseArr.length; r++) {
+                allSeq[c] = s;
+                allRelease[c] = r;
+                allCost[c] = Column.calcCost(seqList.get(s), releaseArr[r]);
+                order[c] = c;
+                c++;
+            }
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> seqList.get(allSeq[i]).length)
+                .thenComparingInt(i -> allRelease[i])
+                .thenComparingDouble(i -> allCost[i]));
+
+        colSeq = new int[numCols];
+        colRelease = new int[numCols];
+        colCost = new double[numCols];
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < numCols; i++) {
+            colSeq[i] = allSeq[order[i]];
+            colRelease[i] = allRelease[order[i]];
+            colCost[i] = allCost[order[i]];
+            if (i == 0 || colRelease[i] != colRelease[i - 1] || length(i) != length(i - 1))
+                starts.add(i);
+        }
+        starts.add(numCols);
+        final int numBuckets = starts.size() - 1;
+        bucketStart = starts.stream().mapToInt(Integer::intValue).toArray();
+        bucketLength = new int[numBuckets];
+        bucketRelease = new int[numBuckets];
+        for (int b = 0; b < numBuckets; b++) {
+            bucketLength[b] = length(bucketStart[b]);
+            bucketRelease[b] = colRelease[bucketStart[b]];
+        }
+
+        testDualArr = new double[TestIndex.get().size()];
+        vehicleDualArr = new double[releaseArr.length];
+        sortedDualArr = new double[testDualArr.length];
+        bestDualSum = new double[maxLevel + 1];
+        chunkTops = new TopColumns[ForkJoinPool.getCommonPoolParallelism()];
+        chunkMin = new double[chunkTops.length];
+        maxColumns = 1;
+        numSegments = 1;
+        rules = Collections.emptyList();
+    }
+
+    private int length(int c) {
+        return seqStart[colSeq[c] + 1] - seqStart[colSeq[c]];
     }
 
     @Override
     public List<Column> price(Map<Integer, Double> testDual,
                               Map<Integer, Double> vehicleDual) {
-        int minIdx = IntStream.range(0, colList.size())
-                .reduce((i,j) ->
-                        reducedCost(colList.get(i), testDual, vehicleDual) <
-                reducedCost(colList.get(j), testDual, vehicleDual) ? i : j).getAsInt();
-        this.reducedCost = reducedCost(colList.get(minIdx), testDual, vehicleDual);
-
-        if (this.reducedCost < -0.001) {
-            return Collections.singletonList(colList.get(minIdx));
+        aborted = false;
+        loadDuals(testDual, vehicleDual);
+
+        double minReducedCost = Double.MAX_VALUE;
+        boolean found = false;
+        if (numSegments > 1) {
+            int segment = nextSegment;
+            nextSegment = (nextSegment + 1) % numSegments;
+            minReducedCost = scanPool(segment, numSegments, maxColumns);
+            found = chunkTops[0].size > 0;
+        }
+        // full scan, also the proof that no negative column is left
+        if (!found && !aborted)
+            minReducedCost = scanPool(0, 1, Integer.MAX_VALUE);
+        this.reducedCost = minReducedCost;
+        // a segment only sees part of the pool, only the full scan of a complete pool proves the minimum
+        this.exact = !found && !aborted && completePool;
+
+        TopColumns top = chunkTops[0];
+        CandidateColumns candidates = new CandidateColumns(maxColumns);
+        for (int i = 0; i < top.size; i++)
+            candidates.offer(toColumn(top.col[i]), top.rc[i]);
+        return candidates.select();
+    }
+
+    // scan one segment of every bucket, the merged result ends up in chunkTops[0]
+    private double scanPool(int segment, int numSegments, int enough) {
+        final int numChunks = parallel ? chunkTops.length : 1;
+        final int poolSize = CandidateColumns.poolSize(maxColumns);
+        for (int k = 0; k < numChunks; k++) {
+            if (chunkTops[k] == null || chunkTops[k].capacity != poolSize)
+                chunkTops[k] = new TopColumns(poolSize);
+            chunkTops[k].clear();
+        }
+
+        // chunk k takes every numChunks-th bucket
+        if (numChunks == 1) {
+            chunkMin[0] = scanBuckets(0, 1, chunkTops[0], segment, numSegments, enough);
         } else {
-            return new ArrayList<>();
+            IntStream.range(0, numChunks).parallel().forEach(k ->
+                    chunkMin[k] = scanBuckets(k, numChunks, chunkTops[k], segment, numSegments, enough));
+        }
+
+        // merge the partial results
+        double minReducedCost = chunkMin[0];
+        TopColumns top = chunkTops[0];
+        for (int k = 1; k < numChunks; k++) {
+            minReducedCost = Math.min(minReducedCost, chunkMin[k]);
+            for (int i = 0; i < chunkTops[k].size; i++)
+                top.offer(chunkTops[k].rc[i], chunkTops[k].col[i]);
+        }
+        return minReducedCost;
+    }
+
+    private void loadDuals(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
+        TestIndex index = TestIndex.get();
+        for (int t = 0; t < testDualArr.length; t++)
+            testDualArr[t] = testDual.get(index.tidAt(t));
+        for (int r = 0; r < releaseArr.length; r++)
+            vehicleDualArr[r] = vehicleDual.get(releaseArr[r]);
+
+        // largest positive duals
+        System.arraycopy(testDualArr, 0, sortedDualArr, 0, testDualArr.length);
+        Arrays.sort(sortedDualArr);
+        for (int len = 1; len < bestDualSum.length; len++) {
+            int idx = sortedDualArr.length - len;
+            bestDualSum[len] = bestDualSum[len - 1] + (idx >= 0 ? Math.max(0, sortedDualArr[idx]) : 0);
+        }
+    }
+
+    // score the given segment of the buckets first, first + step, ..., returns the minimum reduced cost seen.
+    // Stops early once enough negative columns are kept.
+    private double scanBuckets(int first, int step, TopColumns top, int segment, int numSegments, int enough) {
+        double minReducedCost = Double.MAX_VALUE;
+        for (int b = first; b < bucketRelease.length && top.size < enough && !aborted; b += step) {
+            final double vehicleDualValue = vehicleDualArr[bucketRelease[b]];
+            final double fixed = Global.VEHICLE_COST - bestDualSum[bucketLength[b]] - vehicleDualValue;
+            final int bucketSize = bucketStart[b + 1] - bucketStart[b];
+            final int from = bucketStart[b] + (int) ((long) bucketSize * segment / numSegments);
+            final int to = bucketStart[b] + (int) ((long) bucketSize * (segment + 1) / numSegments);
+            for (int c = from; c < to; c++) {
+                // sorted by cost: once the bound is of no use, neither is the rest of the bucket
+                if (fixed + colCost[c] >= Math.max(minReducedCost, top.threshold()))
+                    break;
+                if (!rules.isEmpty() && !allowed(c))
+                    continue;
+                double dualSum = 0;
+                for (int i = seqStart[colSeq[c]]; i < seqStart[colSeq[c] + 1]; i++)
+                    dualSum += testDualArr[seqTests[i]];
+                double rc = Global.VEHICLE_COST + colCost[c] - dualSum - vehicleDualValue;
+                if (rc < minReducedCost)
+                    minReducedCost = rc;
+                if (rc < top.threshold())
+                    top.offer(rc, c);
+            }
+        }
+        return minReducedCost;
+    }
+
+    private boolean allowed(int c) {
+        int s = colSeq[c];
+        for (BranchingRule rule : rules) {
+            if (!rule.allows(seqTests, seqStart[s], seqStart[s + 1], releaseArr[colRelease[c]]))
+                return false;
         }
+        return true;
+    }
+
+    private Column toColumn(int c) {
+        int s = colSeq[c];
+        return new Column(Arrays.copyOfRange(seqTests, seqStart[s], seqStart[s + 1]), releaseArr[colRelease[c]]);
+    }
+
+    // score the pool on several threads
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    // partial pricing: each call scans the next of numSegments slices of every bucket and
+    // falls back to a full scan only when the slice has no negative column. 1 disables it.
+    public void setPartialPricing(int numSegments) {
+        this.numSegments = Math.max(1, numSegments);
+        this.nextSegment = 0;
     }
 
     @Override
@@ -43,6 +270,31 @@ public class EnumPricer implements Pricer {
         return this.reducedCost;
     }
 
+    @Override
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    @Override
+    public void setMaxColumns(int maxColumns) {
+        this.maxColumns = maxColumns;
+    }
+
+    @Override
+    public void setColumnListener(Consumer<List<Column>> listener) {
+        // the columns are only known once price returns
+    }
+
+    @Override
+    public void setBranchingRules(List<BranchingRule> rules) {
+        this.rules = new ArrayList<>(rules);
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+    }
+
     @Override
     public void end() {
 
@@ -54,4 +306,58 @@ public class EnumPricer implements Pricer {
                 - col.getSeq().stream().mapToDouble(testDual::get).sum()
                 - vehicleDual.get(col.getRelease());
     }
+
+    // bounded max-heap of (reduced cost, column index), worst kept column on top
+    private static class TopColumns {
+        private final int capacity;
+        private final double[] rc;
+        private final int[] col;
+        private int size;
+
+        private TopColumns(int capacity) {
+            this.capacity = capacity;
+            this.rc = new double[capacity];
+            this.col = new int[capacity];
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private double threshold() {
+            return size < capacity ? -0.001 : Math.min(-0.001, rc[0]);
+        }
+
+        private void offer(double value, int c) {
+            if (value >= threshold())
+                return;
+            int i;
+            if (size < capacity) {
+                // sift up
+                i = size++;
+                while (i > 0 && rc[(i - 1) >> 1] < value) {
+                    rc[i] = rc[(i - 1) >> 1];
+                    col[i] = col[(i - 1) >> 1];
+                    i = (i - 1) >> 1;
+                }
+            } else {
+                // replace the root and sift down
+                i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size)
+                        break;
+                    if (child + 1 < size && rc[child + 1] > rc[child])
+                        child++;
+                    if (rc[child] <= value)
+                        break;
+                    rc[i] = rc[child];
+                    col[i] = col[child];
+                    i = child;
+                }
+            }
+            rc[i] = value;
+            col[i] = c;
+        }
+    }
 }
@@ -0,0 +1,302 @@
+package algorithm.pricer;
+
+import algorithm.Column;
+import algorithm.branching.BranchingRule;
+import data.DataInstance;
+import utils.CompatibilityIndex;
+import utils.Global;
+import utils.TestIndex;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Randomized greedy construction followed by local search. Each start picks
+ * a random release and a random first test, appends tests one at a time,
+ * choosing at random among the few cheapest additions, and keeps the best
+ * prefix. Additions that do not pay off yet are still made, since at the
+ * master duals every short column already in the master sits at reduced
+ * cost 0. The sequence is then improved by inserting, removing, replacing
+ * and swapping tests and by moving it to another release, until no move
+ * helps. Never exact.
+ */
+public class HeuristicPricer implements Pricer {
+
+    private static final int DEFAULT_STARTS = 30;
+    private static final int CANDIDATE_LIST_SIZE = 3;
+
+    private final int numTests;
+    private final int[] releaseArr;
+    private final double[] testDualArr;
+    private final double[] vehicleDualArr;
+    private final CompatibilityIndex compIndex;
+    private final Random random;
+
+    private double reducedCost;
+    private int maxColumns;
+    private int numStarts;
+    private List<BranchingRule> rules;
+    private volatile boolean aborted;
+
+    public HeuristicPricer() {
+        this(0);
+    }
+
+    public HeuristicPricer(long seed) {
+        this.numTests = TestIndex.get().size();
+        this.releaseArr = DataInstance.getInstance().getVehicleReleaseList().stream()
+                .mapToInt(Integer::intValue).toArray();
+        this.testDualArr = new double[numTests];
+        this.vehicleDualArr = new double[releaseArr.length];
+        this.compIndex = CompatibilityIndex.get();
+        this.random = new Random(seed);
+        this.reducedCost = Double.MAX_VALUE;
+        this.maxColumns = 1;
+        this.numStarts = DEFAULT_STARTS;
+        this.rules = Collections.emptyList();
+    }
+
+    // number of greedy starts per round
+    public void setNumStarts(int numStarts) {
+        this.numStarts = Math.max(1, numStarts);
+    }
+
+    @Override
+    public List<Column> price(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
+        aborted = false;
+        TestIndex index = TestIndex.get();
+        for (int t = 0; t < numTests; t++)
+            testDualArr[t] = testDual.get(index.tidAt(t));
+        for (int r = 0; r < releaseArr.length; r++)
+            vehicleDualArr[r] = vehicleDual.get(releaseArr[r]);
+
+        CandidateColumns candidates = new CandidateColumns(maxColumns);
+        Set<Column> offered = new HashSet<>();
+        this.reducedCost = Double.MAX_VALUE;
+        for (int start = 0; start < numStarts && !aborted; start++) {
+            Solution sol = construct(random.nextInt(releaseArr.length));
+            localSearch(sol);
+            if (!allowed(sol.seq, sol.release))
+                continue;
+            reducedCost = Math.min(reducedCost, sol.rc);
+            Column col = new Column(sol.seq, releaseArr[sol.release]);
+            if (sol.rc < candidates.threshold() && offered.add(col))
+                candidates.offer(col, sol.rc);
+        }
+        return candidates.select();
+    }
+
+    // greedy with a restricted candidate list up to Global.MAX_HITS tests, the best prefix is kept
+    private Solution construct(int release) {
+        Solution best;
+        Solution sol;
+        double[] bestRc = new double[CANDIDATE_LIST_SIZE];
+        int[] bestTest = new int[CANDIDATE_LIST_SIZE];
+        int first = random.nextInt(numTests);
+        sol = new Solution(new int[]{first}, release, reducedCost(new int[]{first}, release));
+        best = sol;
+        while (sol.seq.length < Global.MAX_HITS) {
+            long[] open = compIndex.followers(sol.seq);
+            int size = 0;
+            for (int j = CompatibilityIndex.nextSetBit(open, 0); j >= 0;
+                 j = CompatibilityIndex.nextSetBit(open, j + 1)) {
+                int[] seq = Arrays.copyOf(sol.seq, sol.seq.length + 1);
+                seq[sol.seq.length] = j;
+                double rc = reducedCost(seq, release);
+                // keep the CANDIDATE_LIST_SIZE best additions
+                if (size < CANDIDATE_LIST_SIZE) {
+                    bestRc[size] = rc;
+                    bestTest[size++] = j;
+                    continue;
+                }
+                int worst = 0;
+                for (int k = 1; k < size; k++) {
+                    if (bestRc[k] > bestRc[worst])
+                        worst = k;
+                }
+                if (rc < bestRc[worst]) {
+                    bestRc[worst] = rc;
+                    bestTest[worst] = j;
+                }
+            }
+            if (size == 0)
+                break;
+            int pick = random.nextInt(size);
+            int[] seq = Arrays.copyOf(sol.seq, sol.seq.length + 1);
+            seq[sol.seq.length] = bestTest[pick];
+            sol = new Solution(seq, release, bestRc[pick]);
+            if (sol.rc < best.rc)
+                best = sol;
+        }
+        return best;
+    }
+
+    // first improvement over release, remove, insert, replace and swap moves
+    private void localSearch(Solution sol) {
+        boolean improved = true;
+        while (improved && !aborted) {
+            improved = tryRelease(sol) || tryRemove(sol) || tryInsert(sol) || tryReplace(sol) || trySwap(sol);
+        }
+    }
+
+    private boolean tryRelease(Solution sol) {
+        for (int r = 0; r < releaseArr.length; r++) {
+            if (r != sol.release && sol.improve(sol.seq, r, reducedCost(sol.seq, r)))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean tryRemove(Solution sol) {
+        if (sol.seq.length < 2)
+            return false;
+        for (int p = 0; p < sol.seq.length; p++) {
+            int[] seq = new int[sol.seq.length - 1];
+            System.arraycopy(sol.seq, 0, seq, 0, p);
+            System.arraycopy(sol.seq, p + 1, seq, p, seq.length - p);
+            if (sol.improve(seq, sol.release, reducedCost(seq, sol.release)))
+                return true;
+        }
+        return false;
+    }
+
+    private boolean tryInsert(Solution sol) {
+        if (sol.seq.length >= Global.MAX_HITS)
+            return false;
+        for (int j = 0; j < numTests; j++) {
+            if (contains(sol.seq, j))
+                continue;
+            for (int p = 0; p <= sol.seq.length; p++) {
+                int[] seq = new int[sol.seq.length + 1];
+                System.arraycopy(sol.seq, 0, seq, 0, p);
+                seq[p] = j;
+                System.arraycopy(sol.seq, p, seq, p + 1, sol.seq.length - p);
+                if (feasible(seq) && sol.improve(seq, sol.release, reducedCost(seq, sol.release)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryReplace(Solution sol) {
+        for (int j = 0; j < numTests; j++) {
+            if (contains(sol.seq, j))
+                continue;
+            for (int p = 0; p < sol.seq.length; p++) {
+                int[] seq = sol.seq.clone();
+                seq[p] = j;
+                if (feasible(seq) && sol.improve(seq, sol.release, reducedCost(seq, sol.release)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    // exchange the positions of two tests
+    private boolean trySwap(Solution sol) {
+        for (int p = 0; p < sol.seq.length; p++) {
+            for (int q = p + 1; q < sol.seq.length; q++) {
+                int[] seq = sol.seq.clone();
+                seq[p] = sol.seq[q];
+                seq[q] = sol.seq[p];
+                if (feasible(seq) && sol.improve(seq, sol.release, reducedCost(seq, sol.release)))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean feasible(int[] seq) {
+        for (int p = 0; p < seq.length; p++) {
+            for (int q = p + 1; q < seq.length; q++) {
+                if (!compIndex.canFollow(seq[p], seq[q]))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] seq, int test) {
+        for (int t : seq) {
+            if (t == test)
+                return true;
+        }
+        return false;
+    }
+
+    private boolean allowed(int[] seq, int release) {
+        for (BranchingRule rule : rules) {
+            if (!rule.allows(seq, releaseArr[release]))
+                return false;
+        }
+        return true;
+    }
+
+    private double reducedCost(int[] seq, int release) {
+        double rc = Global.VEHICLE_COST + Column.calcCost(seq, releaseArr[release]) - vehicleDualArr[release];
+        for (int t : seq)
+            rc -= testDualArr[t];
+        return rc;
+    }
+
+    @Override
+    public double getReducedCost() {
+        return reducedCost;
+    }
+
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
+    @Override
+    public void setMaxColumns(int maxColumns) {
+        this.maxColumns = maxColumns;
+    }
+
+    // rule violations are only filtered at the end, the search itself ignores the rules
+    @Override
+    public void setBranchingRules(List<BranchingRule> rules) {
+        this.rules = new ArrayList<>(rules);
+    }
+
+    @Override
+    public void setColumnListener(Consumer<List<Column>> listener) {
+        // the columns are only known once price returns
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public void end() {
+
+    }
+
+    // the current sequence of one start, release as an index into releaseArr
+    private static class Solution {
+        private int[] seq;
+        private int release;
+        private double rc;
+
+        private Solution(int[] seq, int release, double rc) {
+            this.seq = seq;
+            this.release = release;
+            this.rc = rc;
+        }
+
+        private boolean improve(int[] seq, int release, double rc) {
+            if (rc >= this.rc - 1e-9)
+                return false;
+            this.seq = seq;
+            this.release = release;
+            this.rc = rc;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package algorithm.pricer;
+
+import algorithm.Column;
+import algorithm.branching.BranchingRule;
+import algorithm.branching.PairRule;
+import algorithm.branching.ReleaseRule;
+import data.DataInstance;
+import data.TestRequest;
+import utils.CompatibilityIndex;
+import utils.Global;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Elementary resource constrained shortest path pricer. Sequences are grown
+ * test by test (at most Global.MAX_HITS tests) from every vehicle release,
+ * and a label is dropped as soon as another label ending with the same test
+ * and no more tests finishes no later, costs no more and can still be
+ * extended by a superset of its tests.
+ *
+ * Branching rules are folded into the labels: an apart pair closes the
+ * partner test, a together pair makes the partner required, and a release
+ * rule closes the test from the start on the releases it may not use.
+ * Whether a test of a together pair is required depends on whether its
+ * partner was visited, so labels only dominate each other when they have
+ * visited the same tests of together pairs.
+ *
+ * With a column listener set, the columns still competitive after each
+ * release are handed out before the next release is labeled.
+ */
+public class LabelingPricer implements Pricer {
+
+    private final int numTests;
+    private final int[] tidArr;
+    private final int[] releaseArr;
+    private final TestRequest[] testArr;
+    private final CompatibilityIndex compIndex;
+
+    private double reducedCost;
+    private volatile boolean aborted;
+    private int maxColumns;
+    private Consumer<List<Column>> listener;
+    private List<ReleaseRule> releaseRules;
+    private int[][] apartPartners;    // tests closed once the test is added
+    private int[][] togetherPartners; // tests required once the test is added
+    private long[] togetherTests;     // tests in some together pair
+
+    public LabelingPricer() {
+        this(DataInstance.getInstance().getVehicleReleaseList().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    // only columns on the given release
+    public LabelingPricer(int release) {
+        this(new int[]{release});
+    }
+
+    private LabelingPricer(int[] releaseArr) {
+        this.reducedCost = Double.MAX_VALUE;
+        this.maxColumns = 1;
+
+        DataInstance instance = DataInstance.getInstance();
+        this.tidArr = instance.getTidList().stream().mapToInt(Integer::intValue).toArray();
+        this.releaseArr = releaseArr;
+        this.numTests = tidArr.length;
+        this.compIndex = CompatibilityIndex.get();
+
+        this.testArr = new TestRequest[numTests];
+        for (int i = 0; i < numTests; i++) {
+            testArr[i] = instance.getTestById(tidArr[i]);
+        }
+        setBranchingRules(new ArrayList<>());
+    }
+
+    @Override
+    public List<Column> price(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
+        final double[] testDualArr = new double[numTests];
+        for (int i = 0; i < numTests; i++) {
+            testDualArr[i] = testDual.get(tidArr[i]);
+        }
+
+        // bestDualSum[r]: largest total dual any r more tests can collect
+        final double[] sortedDual = testDualArr.clone();
+        Arrays.sort(sortedDual);
+        final double[] bestDualSum = new double[Global.MAX_HITS + 1];
+        for (int r = 1; r <= Global.MAX_HITS; r++) {
+            int idx = numTests - r;
+            bestDualSum[r] = bestDualSum[r - 1] + (idx >= 0 ? Math.max(0, sortedDual[idx]) : 0);
+        }
+
+        CandidateColumns candidates = new CandidateColumns(maxColumns);
+        this.reducedCost = Double.MAX_VALUE;
+        this.aborted = false;
+
+        // one labeling run per vehicle release
+        for (int release : releaseArr) {
+            if (aborted)
+                break;
+            double fixedCost = Global.VEHICLE_COST - vehicleDual.get(release);
+            solveForRelease(release, fixedCost, testDualArr, bestDualSum, candidates);
+        }
+
+        return candidates.select();
+    }
+
+    private void solveForRelease(int release, double fixedCost, double[] testDualArr, double[] bestDualSum,
+                                 CandidateColumns candidates) {
+        List<List<Label>> labelsByLast = new ArrayList<>(numTests);
+        for (int i = 0; i < numTests; i++)
+            labelsByLast.add(new ArrayList<>());
+
+        Label root = new Label(release, compIndex);
+        for (ReleaseRule rule : releaseRules) {
+            if (!rule.allowsTestOn(release))
+                CompatibilityIndex.clear(root.open, rule.getTest());
+        }
+        List<Label> curr_lvl = new ArrayList<>();
+        curr_lvl.add(root);
+        List<Column> offered = new ArrayList<>();
+        List<Double> offeredCost = new ArrayList<>();
+
+        int lvl = 0;
+        while (lvl++ < Global.MAX_HITS && !curr_lvl.isEmpty() && !aborted) {
+            List<Label> nxt_lvl = new ArrayList<>();
+            for (Label label : curr_lvl) {
+                if (label.dominated)
+                    continue;
+                // no extension can beat the minimum or enter the candidate pool
+                if (fixedCost + label.cost - bestDualSum[Global.MAX_HITS - label.path.length]
+                        >= Math.max(reducedCost, candidates.threshold()))
+                    continue;
+                for (int j = CompatibilityIndex.nextSetBit(label.open, 0); j >= 0;
+                     j = CompatibilityIndex.nextSetBit(label.open, j + 1)) {
+                    TestRequest test = testArr[j];
+                    int finish = finishTime(label.finish, test);
+                    double cost = label.cost + Math.max(0, finish - test.getDeadline()) - testDualArr[j];
+                    Label newLabel = new Label(label, j, finish, cost, compIndex, togetherTests);
+                    if (!applyRules(newLabel, j))
+                        continue;
+
+                    if (!insert(labelsByLast.get(j), newLabel))
+                        continue;
+                    nxt_lvl.add(newLabel);
+                    // a label still missing a together partner is not a valid column yet
+                    if (!newLabel.isComplete())
+                        continue;
+                    double colReducedCost = fixedCost + cost;
+                    reducedCost = Math.min(reducedCost, colReducedCost);
+                    if (colReducedCost < candidates.threshold()) {
+                        Column col = new Column(newLabel.toSeq(tidArr), release);
+                        candidates.offer(col, colReducedCost);
+                        offered.add(col);
+                        offeredCost.add(colReducedCost);
+                    }
+                }
+            }
+            curr_lvl = nxt_lvl;
+        }
+
+        if (listener == null)
+            return;
+        List<Column> found = new ArrayList<>();
+        for (int i = 0; i < offered.size(); i++) {
+            if (offeredCost.get(i) <= candidates.threshold())
+                found.add(offered.get(i));
+        }
+        if (!found.isEmpty())
+            listener.accept(found);
+    }
+
+    // close the apart partners of the added test and require its together partners,
+    // false if the label can no longer be completed
+    private boolean applyRules(Label label, int test) {
+        for (int partner : apartPartners[test])
+            CompatibilityIndex.clear(label.open, partner);
+        for (int partner : togetherPartners[test]) {
+            if (!label.visits(partner))
+                CompatibilityIndex.set(label.required, partner);
+        }
+        if (!CompatibilityIndex.isSubset(label.required, label.open))
+            return false;
+        int numRequired = 0;
+        for (long word : label.required)
+            numRequired += Long.bitCount(word);
+        return label.path.length + numRequired <= Global.MAX_HITS;
+    }
+
+    // same rule as Column.calacCost
+    private static int finishTime(int release, TestRequest test) {
+        if (release + test.getPrep() < test.getRelease())
+            return test.getRelease() + test.getTat() + test.getAnalysis();
+        else
+            return release + test.getDur();
+    }
+
+    // add the label to its bucket unless dominated, discarding the labels it dominates
+    private static boolean insert(List<Label> bucket, Label newLabel) {
+        for (Label label : bucket) {
+            if (label.dominates(newLabel))
+                return false;
+        }
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Label label = bucket.get(i);
+            if (newLabel.dominates(label))
+                label.dominated = true;
+            else
+                bucket.set(kept++, label);
+        }
+        bucket.subList(kept, bucket.size()).clear();
+        bucket.add(newLabel);
+        return true;
+    }
+
+    @Override
+    public double getReducedCost() {
+        return this.reducedCost;
+    }
+
+    @Override
+    public boolean isExact() {
+        return !aborted;
+    }
+
+    @Override
+    public void setMaxColumns(int maxColumns) {
+        this.maxColumns = maxColumns;
+    }
+
+    @Override
+    public void setBranchingRules(List<BranchingRule> rules) {
+        List<List<Integer>> apart = new ArrayList<>();
+        List<List<Integer>> together = new ArrayList<>();
+        for (int i = 0; i < numTests; i++) {
+            apart.add(new ArrayList<>());
+            together.add(new ArrayList<>());
+        }
+        this.releaseRules = new ArrayList<>();
+        for (BranchingRule rule : rules) {
+            if (rule instanceof PairRule) {
+                PairRule pair = (PairRule) rule;
+                List<List<Integer>> partners = pair.isTogether() ? together : apart;
+                partners.get(pair.getFirst()).add(pair.getSecond());
+                partners.get(pair.getSecond()).add(pair.getFirst());
+            } else if (rule instanceof ReleaseRule) {
+                releaseRules.add((ReleaseRule) rule);
+            } else {
+                throw new IllegalArgumentException("Unsupported branching rule: " + rule);
+            }
+        }
+        this.apartPartners = new int[numTests][];
+        this.togetherPartners = new int[numTests][];
+        this.togetherTests = new long[compIndex.numWords()];
+        for (int i = 0; i < numTests; i++) {
+            apartPartners[i] = apart.get(i).stream().mapToInt(Integer::intValue).toArray();
+            togetherPartners[i] = together.get(i).stream().mapToInt(Integer::intValue).toArray();
+            if (togetherPartners[i].length > 0)
+                CompatibilityIndex.set(togetherTests, i);
+        }
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public void setColumnListener(Consumer<List<Column>> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void end() {
+
+    }
+
+    private static class Label {
+        private final int[] path;
+        private final long[] open; // tests that can still be appended
+        private final long[] required; // tests that must still be appended, see applyRules
+        private final long[] linked;   // visited tests of together pairs, shared while unchanged
+        private final int finish;
+        private final double cost;
+        private boolean dominated;
+
+        private Label(int release, CompatibilityIndex compIndex) {
+            this.path = new int[0];
+            this.open = new long[compIndex.numWords()];
+            this.required = new long[compIndex.numWords()];
+            this.linked = new long[compIndex.numWords()];
+            compIndex.followers(path, 0, open);
+            this.finish = release;
+            this.cost = 0;
+        }
+
+        private Label(Label prev, int test, int finish, double cost, CompatibilityIndex compIndex,
+                      long[] togetherTests) {
+            this.path = Arrays.copyOf(prev.path, prev.path.length + 1);
+            this.path[prev.path.length] = test;
+            this.open = new long[prev.open.length];
+            compIndex.extend(prev.open, test, open);
+            this.required = prev.required.clone();
+            CompatibilityIndex.clear(required, test);
+            if (CompatibilityIndex.contains(togetherTests, test)) {
+                this.linked = prev.linked.clone();
+                CompatibilityIndex.set(linked, test);
+            } else {
+                this.linked = prev.linked;
+            }
+            this.finish = finish;
+            this.cost = cost;
+        }
+
+        // the open set only shrinks as tests are added, so a superset keeps every extension available,
+        // and every completion of other then also covers the required tests of this label. A longer
+        // path has fewer of the Global.MAX_HITS slots left, so it never dominates a shorter one. An
+        // extension only requires the together partners not visited yet, so those must agree, too.
+        private boolean dominates(Label other) {
+            if (finish > other.finish || cost > other.cost || path.length > other.path.length)
+                return false;
+            return Arrays.equals(linked, other.linked)
+                    && CompatibilityIndex.isSubset(other.open, open)
+                    && CompatibilityIndex.isSubset(required, other.required);
+        }
+
+        private boolean isComplete() {
+            for (long word : required) {
+                if (word != 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private boolean visits(int test) {
+            for (int t : path) {
+                if (t == test)
+                    return true;
+            }
+            return false;
+        }
+
+        private List<Integer> toSeq(int[] tidArr) {
+            List<Integer> seq = new ArrayList<>(path.length);
+            for (int t : path)
+                seq.add(tidArr[t]);
+            return seq;
+        }
+    }
+}
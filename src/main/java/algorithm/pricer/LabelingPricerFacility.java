@@ -0,0 +1,250 @@
+package algorithm.pricer;
+
+import algorithm.Column;
+import data.DataInstance;
+import data.TestRequest;
+import facility.ColumnWithTiming;
+import facility.DayDualSnapshot;
+import utils.CompatibilityIndex;
+import utils.Global;
+
+import java.util.*;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Time-indexed labeling pricer for the facility model. A label is a sequence
+ * together with the start day of every test, and extending it by a test may
+ * start that test on any day from its earliest possible start, paying the
+ * tardiness and the day-capacity duals of its crash window. Only the start
+ * days cheaper than every earlier one are worth a label, since waiting is
+ * always allowed; they are precomputed per test as a chain of next cheaper
+ * days. Labels are then dominated as in LabelingPricer.
+ *
+ * The crash window of a test lies within [start, start + dur), so the
+ * windows of one sequence never share a day and are charged one by one.
+ * Starts whose crash window would pass horizonEnd are never offered, as the
+ * master has no capacity rows for those days.
+ */
+public class LabelingPricerFacility implements PricerFacility {
+
+    private final int numTests;
+    private final int[] tidArr;
+    private final int[] releaseArr;
+    private final TestRequest[] testArr;
+    private final CompatibilityIndex compIndex;
+    private final int horizonStart;
+    private final int numDays; // start days horizonStart..horizonEnd
+
+    // per call, by test and start day - horizonStart
+    private final int[] earliest;      // first possible start day index
+    private final int[] latest;        // last start day index with the crash window inside the horizon
+    private final double[][] stepCost; // tardiness plus day duals of starting the test that day
+    private final int[][] nextCheaper; // next later day with a smaller step cost, -1 if none
+    private final double[] testDualArr;
+
+    private double reducedCost;
+    private int maxColumns;
+
+    public LabelingPricerFacility() {
+        DataInstance instance = DataInstance.getInstance();
+        this.tidArr = instance.getTidList().stream().mapToInt(Integer::intValue).toArray();
+        this.releaseArr = instance.getVehicleReleaseList().stream().mapToInt(Integer::intValue).toArray();
+        this.numTests = tidArr.length;
+        this.compIndex = CompatibilityIndex.get();
+        this.horizonStart = instance.getHorizonStart();
+        this.numDays = instance.getHorizonEnd() - horizonStart + 1;
+
+        this.testArr = new TestRequest[numTests];
+        this.earliest = new int[numTests];
+        this.latest = new int[numTests];
+        for (int i = 0; i < numTests; i++) {
+            testArr[i] = instance.getTestById(tidArr[i]);
+            earliest[i] = Math.max(0, testArr[i].getRelease() - testArr[i].getPrep() - horizonStart);
+            latest[i] = Math.min(numDays - 1,
+                    instance.getHorizonEnd() - testArr[i].getPrep() - testArr[i].getTat() - horizonStart);
+        }
+        this.stepCost = new double[numTests][numDays];
+        this.nextCheaper = new int[numTests][numDays];
+        this.testDualArr = new double[numTests];
+        this.reducedCost = Double.MAX_VALUE;
+        this.maxColumns = 1;
+    }
+
+    public void setMaxColumns(int maxColumns) {
+        this.maxColumns = maxColumns;
+    }
+
+    @Override
+    public List<ColumnWithTiming> price(Map<Integer, Double> testDual,
+                                        Map<Integer, Double> vehicleDual,
+                                        DayDualSnapshot dayDual) {
+        for (int i = 0; i < numTests; i++)
+            testDualArr[i] = testDual.get(tidArr[i]);
+        double[] gain = new double[numTests];
+        for (int i = 0; i < numTests; i++)
+            gain[i] = testDualArr[i] - buildStepCosts(i, dayDual);
+
+        // bestGainSum[r]: largest total gain any r more tests can bring
+        final double[] sortedGain = gain.clone();
+        Arrays.sort(sortedGain);
+        final double[] bestGainSum = new double[Global.MAX_HITS + 1];
+        for (int r = 1; r <= Global.MAX_HITS; r++) {
+            int idx = numTests - r;
+            bestGainSum[r] = bestGainSum[r - 1] + (idx >= 0 ? Math.max(0, sortedGain[idx]) : 0);
+        }
+
+        CandidateColumns candidates = new CandidateColumns(maxColumns);
+        this.reducedCost = Double.MAX_VALUE;
+        for (int release : releaseArr) {
+            double fixedCost = Global.VEHICLE_COST - vehicleDual.get(release);
+            solveForRelease(release, fixedCost, bestGainSum, candidates);
+        }
+
+        List<ColumnWithTiming> result = new ArrayList<>();
+        for (Column col : candidates.select())
+            result.add((ColumnWithTiming) col);
+        return result;
+    }
+
+    // step costs and next cheaper days of one test, returns the smallest step cost
+    private double buildStepCosts(int t, DayDualSnapshot dayDual) {
+        TestRequest test = testArr[t];
+        double[] cost = stepCost[t];
+        int[] next = nextCheaper[t];
+        double minCost = Double.MAX_VALUE;
+        for (int k = earliest[t]; k <= latest[t]; k++) {
+            int start = k + horizonStart;
+            cost[k] = Math.max(0, start + test.getDur() - test.getDeadline()) + dayDual.crashPenalty(test, start);
+            minCost = Math.min(minCost, cost[k]);
+        }
+        // scan backwards, keeping the days cheaper than everything before them in a stack
+        int[] stack = new int[numDays];
+        int size = 0;
+        for (int k = latest[t]; k >= earliest[t]; k--) {
+            while (size > 0 && cost[stack[size - 1]] >= cost[k])
+                size--;
+            next[k] = size > 0 ? stack[size - 1] : -1;
+            stack[size++] = k;
+        }
+        return minCost;
+    }
+
+    private void solveForRelease(int release, double fixedCost, double[] bestGainSum,
+                                 CandidateColumns candidates) {
+        List<List<Label>> labelsByLast = new ArrayList<>(numTests);
+        for (int i = 0; i < numTests; i++)
+            labelsByLast.add(new ArrayList<>());
+
+        List<Label> curr_lvl = new ArrayList<>();
+        curr_lvl.add(new Label(release, compIndex));
+
+        int lvl = 0;
+        while (lvl++ < Global.MAX_HITS && !curr_lvl.isEmpty()) {
+            List<Label> nxt_lvl = new ArrayList<>();
+            for (Label label : curr_lvl) {
+                if (label.dominated)
+                    continue;
+                // no extension can beat the minimum or enter the candidate pool
+                if (fixedCost + label.cost - bestGainSum[Global.MAX_HITS - label.path.length]
+                        >= Math.max(reducedCost, candidates.threshold()))
+                    continue;
+                for (int j = CompatibilityIndex.nextSetBit(label.open, 0); j >= 0;
+                     j = CompatibilityIndex.nextSetBit(label.open, j + 1)) {
+                    int dur = testArr[j].getDur();
+                    for (int k = Math.max(earliest[j], label.finish - horizonStart); k >= 0 && k <= latest[j];
+                         k = nextCheaper[j][k]) {
+                        double cost = label.cost + stepCost[j][k] - testDualArr[j];
+                        int start = k + horizonStart;
+                        Label newLabel = new Label(label, j, start, start + dur, cost, compIndex);
+                        if (!insert(labelsByLast.get(j), newLabel))
+                            continue;
+                        nxt_lvl.add(newLabel);
+                        double colReducedCost = fixedCost + cost;
+                        reducedCost = Math.min(reducedCost, colReducedCost);
+                        if (colReducedCost < candidates.threshold())
+                            candidates.offer(newLabel.toColumn(release), colReducedCost);
+                    }
+                }
+            }
+            curr_lvl = nxt_lvl;
+        }
+    }
+
+    // add the label to its bucket unless dominated, discarding the labels it dominates
+    private static boolean insert(List<Label> bucket, Label newLabel) {
+        for (Label label : bucket) {
+            if (label.dominates(newLabel))
+                return false;
+        }
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Label label = bucket.get(i);
+            if (newLabel.dominates(label))
+                label.dominated = true;
+            else
+                bucket.set(kept++, label);
+        }
+        bucket.subList(kept, bucket.size()).clear();
+        bucket.add(newLabel);
+        return true;
+    }
+
+    @Override
+    public double getReducedCost() {
+        return this.reducedCost;
+    }
+
+    @Override
+    public boolean isExact() {
+        return true;
+    }
+
+    @Override
+    public void end() {
+
+    }
+
+    private static class Label {
+        private final int[] path;
+        private final int[] starts;
+        private final long[] open; // tests that can still be appended
+        private final int finish;
+        private final double cost;
+        private boolean dominated;
+
+        private Label(int release, CompatibilityIndex compIndex) {
+            this.path = new int[0];
+            this.starts = new int[0];
+            this.open = new long[compIndex.numWords()];
+            compIndex.followers(path, 0, open);
+            this.finish = release;
+            this.cost = 0;
+        }
+
+        private Label(Label prev, int test, int start, int finish, double cost, CompatibilityIndex compIndex) {
+            this.path = Arrays.copyOf(prev.path, prev.path.length + 1);
+            this.path[prev.path.length] = test;
+            this.starts = Arrays.copyOf(prev.starts, prev.starts.length + 1);
+            this.starts[prev.starts.length] = start;
+            this.open = new long[prev.open.length];
+            compIndex.extend(prev.open, test, open);
+            this.finish = finish;
+            this.cost = cost;
+        }
+
+        // a later start is always possible, so finishing earlier with a superset of open tests and no
+        // fewer free slots is enough
+        private boolean dominates(Label other) {
+            if (finish > other.finish || cost > other.cost || path.length > other.path.length)
+                return false;
+            return CompatibilityIndex.isSubset(other.open, open);
+        }
+
+        // the arrays of a label never change, so the column shares them
+        private ColumnWithTiming toColumn(int release) {
+            return new ColumnWithTiming(path, release, starts);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package algorithm.pricer;
 
 import data.DataInstance;
 import facility.ColumnWithTiming;
+import facility.DayDualSnapshot;
 import gurobi.*;
 import utils.Global;
 
@@ -136,7 +137,7 @@ public class MIPPricerFacility implements PricerFacility {
 
     @Override
     public List<ColumnWithTiming> price(Map<Integer, Double> testDual,
-                                        Map<Integer, Double> vehicleDual, Map<Integer, Double> dayDual) {
+                                        Map<Integer, Double> vehicleDual, DayDualSnapshot dayDual) {
         return null;
     }
 
@@ -145,6 +146,11 @@ public class MIPPricerFacility implements PricerFacility {
         return this.reducedCost;
     }
 
+    @Override
+    public boolean isExact() {
+        return false;
+    }
+
     @Override
     public void end() {
         this.model.dispose();
@@ -0,0 +1,161 @@
+package algorithm.pricer;
+
+import algorithm.Column;
+import algorithm.branching.BranchingRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Races several pricers on the same duals, each on its own thread. The
+ * first one to return negative columns wins and the others are aborted.
+ * When none finds a column, the round is exact if any exact member ran to
+ * the end, and the reduced cost is the best bound among those members.
+ */
+public class PortfolioPricer implements Pricer {
+
+    private static final long ABORT_RETRY_MILLIS = 10;
+
+    private final List<Pricer> pricers;
+    private final ExecutorService executor;
+
+    private double reducedCost;
+    private boolean exact;
+    private int lastWinner;
+
+    public PortfolioPricer(Pricer... pricers) {
+        this(Arrays.asList(pricers));
+    }
+
+    public PortfolioPricer(List<Pricer> pricers) {
+        if (pricers.isEmpty())
+            throw new IllegalArgumentException("A portfolio needs at least one pricer");
+        this.pricers = new ArrayList<>(pricers);
+        this.executor = Executors.newFixedThreadPool(pricers.size(), r -> {
+            Thread thread = new Thread(r, "portfolio pricer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reducedCost = Double.MAX_VALUE;
+        this.lastWinner = -1;
+    }
+
+    @Override
+    public List<Column> price(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Integer>> futures = new ArrayList<>();
+        List<List<Column>> results = new ArrayList<>();
+        for (int k = 0; k < pricers.size(); k++) {
+            final int member = k;
+            results.add(null);
+            futures.add(completion.submit(() -> {
+                results.set(member, pricers.get(member).price(testDual, vehicleDual));
+                return member;
+            }));
+        }
+
+        int winner = -1;
+        reducedCost = Double.MAX_VALUE;
+        exact = false;
+        double bestBound = Double.NEGATIVE_INFINITY;
+        try {
+            for (int done = 0; done < pricers.size() && winner < 0; done++) {
+                int member;
+                try {
+                    member = completion.take().get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                Pricer pricer = pricers.get(member);
+                if (!results.get(member).isEmpty()) {
+                    winner = member;
+                } else if (pricer.isExact()) {
+                    exact = true;
+                    bestBound = Math.max(bestBound, pricer.getReducedCost());
+                }
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        }
+
+        // the members are reused next round, so wait for the aborted ones
+        for (int k = 0; k < pricers.size(); k++)
+            stop(pricers.get(k), futures.get(k));
+
+        lastWinner = winner;
+        if (winner < 0) {
+            if (exact)
+                reducedCost = bestBound;
+            return new ArrayList<>();
+        }
+        reducedCost = pricers.get(winner).getReducedCost();
+        exact = pricers.get(winner).isExact();
+        return results.get(winner);
+    }
+
+    // abort again until the call has returned, in case it had not started yet
+    private static void stop(Pricer pricer, Future<Integer> future) {
+        while (!future.isDone()) {
+            pricer.abort();
+            try {
+                future.get(ABORT_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // checked again by the loop, failures were reported by price
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // index of the pricer that won the last round, -1 if none found a column
+    public int getLastWinner() {
+        return lastWinner;
+    }
+
+    @Override
+    public double getReducedCost() {
+        return reducedCost;
+    }
+
+    @Override
+    public boolean isExact() {
+        return exact;
+    }
+
+    @Override
+    public void setMaxColumns(int maxColumns) {
+        pricers.forEach(pricer -> pricer.setMaxColumns(maxColumns));
+    }
+
+    @Override
+    public void setBranchingRules(List<BranchingRule> rules) {
+        pricers.forEach(pricer -> pricer.setBranchingRules(rules));
+    }
+
+    // the listener may be called from several threads
+    @Override
+    public void setColumnListener(Consumer<List<Column>> listener) {
+        pricers.forEach(pricer -> pricer.setColumnListener(listener));
+    }
+
+    @Override
+    public void abort() {
+        pricers.forEach(Pricer::abort);
+    }
+
+    @Override
+    public void end() {
+        executor.shutdown();
+        pricers.forEach(Pricer::end);
+    }
+}
@@ -1,9 +1,11 @@
 package algorithm.pricer;
 
 import algorithm.Column;
+import algorithm.branching.BranchingRule;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * Yuhui Shi - University of Michigan
@@ -13,5 +15,15 @@ public interface Pricer {
     List<Column> price(Map<Integer, Double> testDual,
                               Map<Integer, Double> vehicleDual);
     double getReducedCost();
+    // whether the last getReducedCost is a proven lower bound on the reduced cost of every column
+    boolean isExact();
+    // upper limit on the number of columns returned by one price call
+    void setMaxColumns(int maxColumns);
+    // columns violating any of the rules are neither returned nor counted in getReducedCost
+    void setBranchingRules(List<BranchingRule> rules);
+    // gets batches of columns found while price is still running, null for none
+    void setColumnListener(Consumer<List<Column>> listener);
+    // called from another thread: the running price call returns early with what it has, not exact
+    void abort();
     void end();
 }
@@ -1,6 +1,7 @@
 package algorithm.pricer;
 
 import facility.ColumnWithTiming;
+import facility.DayDualSnapshot;
 
 import java.util.List;
 import java.util.Map;
@@ -12,8 +13,10 @@ import java.util.Map;
 public interface PricerFacility {
     List<ColumnWithTiming> price(Map<Integer, Double> testDual,
                                  Map<Integer, Double> vehicleDual,
-                                 Map<Integer, Double> dayDual);
+                                 DayDualSnapshot dayDual);
     double getReducedCost();
+    // true if getReducedCost() is the minimum over all columns, i.e. a valid bound
+    boolean isExact();
     void end();
 
 }
@@ -0,0 +1,113 @@
+package algorithm.pricer;
+
+import algorithm.Column;
+import algorithm.branching.BranchingRule;
+import data.DataInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * One independent pricing subproblem per distinct vehicle release, each with
+ * its own pricer (e.g. CPOPricer::new with the vehicle fixed), run on a
+ * thread pool. The best columns of all releases are merged. The round is
+ * exact only if every subproblem is.
+ */
+public class ReleaseSplitPricer implements Pricer {
+
+    private final List<Pricer> pricers;
+    private final ExecutorService executor;
+
+    private double reducedCost;
+    private boolean exact;
+    private int maxColumns;
+
+    public ReleaseSplitPricer(IntFunction<Pricer> pricerFactory) {
+        this(pricerFactory, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ReleaseSplitPricer(IntFunction<Pricer> pricerFactory, int numThreads) {
+        this.pricers = new ArrayList<>();
+        for (int release : DataInstance.getInstance().getVehicleReleaseList())
+            pricers.add(pricerFactory.apply(release));
+        this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, pricers.size())), r -> {
+            Thread thread = new Thread(r, "release pricer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reducedCost = Double.MAX_VALUE;
+        this.maxColumns = 1;
+    }
+
+    @Override
+    public List<Column> price(Map<Integer, Double> testDual, Map<Integer, Double> vehicleDual) {
+        List<Future<List<Column>>> futures = new ArrayList<>();
+        for (Pricer pricer : pricers)
+            futures.add(executor.submit(() -> pricer.price(testDual, vehicleDual)));
+
+        CandidateColumns candidates = new CandidateColumns(maxColumns);
+        reducedCost = Double.MAX_VALUE;
+        exact = true;
+        for (int k = 0; k < pricers.size(); k++) {
+            List<Column> cols;
+            try {
+                cols = futures.get(k).get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                exact = false;
+                continue;
+            }
+            reducedCost = Math.min(reducedCost, pricers.get(k).getReducedCost());
+            exact &= pricers.get(k).isExact();
+            for (Column col : cols)
+                candidates.offer(col, EnumPricer.reducedCost(col, testDual, vehicleDual));
+        }
+        return candidates.select();
+    }
+
+    @Override
+    public double getReducedCost() {
+        return reducedCost;
+    }
+
+    @Override
+    public boolean isExact() {
+        return exact;
+    }
+
+    // also the limit of every subproblem, since one release may hold all the best columns
+    @Override
+    public void setMaxColumns(int maxColumns) {
+        this.maxColumns = maxColumns;
+        pricers.forEach(pricer -> pricer.setMaxColumns(maxColumns));
+    }
+
+    @Override
+    public void setBranchingRules(List<BranchingRule> rules) {
+        pricers.forEach(pricer -> pricer.setBranchingRules(rules));
+    }
+
+    // the listener may be called from several threads
+    @Override
+    public void setColumnListener(Consumer<List<Column>> listener) {
+        pricers.forEach(pricer -> pricer.setColumnListener(listener));
+    }
+
+    @Override
+    public void abort() {
+        pricers.forEach(Pricer::abort);
+    }
+
+    @Override
+    public void end() {
+        executor.shutdown();
+        pricers.forEach(Pricer::end);
+    }
+}
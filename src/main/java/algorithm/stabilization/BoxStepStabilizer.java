@@ -0,0 +1,62 @@
+package algorithm.stabilization;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Box step: the master duals are projected into a box of half width delta
+ * around the center, the dual point with the best Lagrangian bound so far.
+ * The master LP itself is not penalized, the box only acts on the duals
+ * handed to the pricer. Every mis-pricing doubles the width, until the box
+ * holds the master duals.
+ */
+public class BoxStepStabilizer implements DualStabilizer {
+
+    private final double initialDelta;
+    private double delta;
+    private double[] center;
+    private double centerBound;
+    private boolean atMasterDual;
+
+    public BoxStepStabilizer(double delta) {
+        if (delta <= 0)
+            throw new IllegalArgumentException("Box width must be positive: " + delta);
+        this.initialDelta = delta;
+        this.centerBound = Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public double[] stabilize(double[] masterDual) {
+        delta = initialDelta;
+        return project(masterDual);
+    }
+
+    @Override
+    public void update(double[] pricedDual, double lagrangianBound) {
+        if (lagrangianBound > centerBound) {
+            center = pricedDual.clone();
+            centerBound = lagrangianBound;
+        }
+    }
+
+    @Override
+    public double[] misprice(double[] masterDual) {
+        if (atMasterDual)
+            return null;
+        delta *= 2;
+        return project(masterDual);
+    }
+
+    private double[] project(double[] masterDual) {
+        atMasterDual = true;
+        if (center == null)
+            return masterDual;
+        double[] result = new double[masterDual.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Math.max(center[i] - delta, Math.min(center[i] + delta, masterDual[i]));
+            if (result[i] != masterDual[i])
+                atMasterDual = false;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,21 @@
+package algorithm.stabilization;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Sits between the dual values of the restricted master and the pricer.
+ * Dual vectors are flat arrays laid out by the master (test duals, vehicle
+ * duals, then any further rows), all stabilizers treat the entries alike.
+ */
+public interface DualStabilizer {
+    // duals the pricer should use in this iteration
+    double[] stabilize(double[] masterDual);
+
+    // Lagrangian bound obtained by pricing at the given duals
+    void update(double[] pricedDual, double lagrangianBound);
+
+    // pricing at the last point gave no column improving the master: next point to price at,
+    // or null when the last point already was the master duals
+    double[] misprice(double[] masterDual);
+}
@@ -0,0 +1,25 @@
+package algorithm.stabilization;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Prices directly at the master duals.
+ */
+public class NoStabilizer implements DualStabilizer {
+
+    @Override
+    public double[] stabilize(double[] masterDual) {
+        return masterDual;
+    }
+
+    @Override
+    public void update(double[] pricedDual, double lagrangianBound) {
+
+    }
+
+    @Override
+    public double[] misprice(double[] masterDual) {
+        return null;
+    }
+}
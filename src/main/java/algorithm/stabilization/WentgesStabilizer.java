@@ -0,0 +1,61 @@
+package algorithm.stabilization;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Wentges smoothing: price at alpha * center + (1 - alpha) * masterDual, where
+ * the center is the dual point with the best Lagrangian bound so far. After
+ * k mis-pricings in a row the weight drops to max(0, 1 - (k + 1) * (1 - alpha)),
+ * so every retry prices at new duals and the master duals are reached after
+ * a finite number of steps.
+ */
+public class WentgesStabilizer implements DualStabilizer {
+
+    private final double alpha;
+    private double[] center;
+    private double centerBound;
+    private int numMispricing;
+    private double currentAlpha;
+
+    public WentgesStabilizer(double alpha) {
+        if (alpha < 0 || alpha >= 1)
+            throw new IllegalArgumentException("Smoothing factor must be in [0, 1): " + alpha);
+        this.alpha = alpha;
+        this.centerBound = Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public double[] stabilize(double[] masterDual) {
+        numMispricing = 0;
+        currentAlpha = center == null ? 0 : alpha;
+        return smooth(masterDual);
+    }
+
+    @Override
+    public void update(double[] pricedDual, double lagrangianBound) {
+        if (lagrangianBound > centerBound) {
+            center = pricedDual.clone();
+            centerBound = lagrangianBound;
+        }
+    }
+
+    @Override
+    public double[] misprice(double[] masterDual) {
+        if (currentAlpha == 0)
+            return null;
+        numMispricing++;
+        // the first round already priced at alpha = 1 - (1 - alpha)
+        currentAlpha = Math.max(0, 1 - (numMispricing + 1) * (1 - alpha));
+        return smooth(masterDual);
+    }
+
+    private double[] smooth(double[] masterDual) {
+        if (currentAlpha == 0)
+            return masterDual;
+        double[] result = new double[masterDual.length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = currentAlpha * center[i] + (1 - currentAlpha) * masterDual[i];
+        return result;
+    }
+}
@@ -2,13 +2,20 @@ package facility;
 
 import algorithm.Algorithm;
 import algorithm.Column;
+import algorithm.ColumnPool;
+import algorithm.master.GurobiMaster;
+import algorithm.master.MasterSolver;
 import algorithm.pricer.CPOPricerFacility;
+import algorithm.pricer.LabelingPricerFacility;
 import algorithm.pricer.PricerFacility;
+import algorithm.stabilization.DualStabilizer;
+import algorithm.stabilization.NoStabilizer;
 import data.DataInstance;
-import gurobi.*;
 import utils.Global;
+import utils.TestIndex;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static algorithm.ColumnGeneration.enumInitCol;
@@ -20,16 +27,51 @@ import static algorithm.ColumnGeneration.enumInitCol;
 @SuppressWarnings("ALL")
 public class ColumnGenerationFacility implements Algorithm {
 
-    private Map<ColumnWithTiming, GRBVar> varMap;
-    private Map<Integer, GRBConstr> resourceCapConstrs;
-    private Map<Integer, GRBConstr> testCoverConstrs;
-    private Map<Integer, GRBConstr> vehicleCapConstrs;
+    private static final int COLUMNS_PER_ITERATION = 10;
+
+    private final PricerFacility pricer;
+    private Map<ColumnWithTiming, Integer> colIdx; // column handles in the master
+    private Map<Integer, Integer> vehicleCapRows;
+    private int[] testCoverRows;    // test cover rows by dense test index
+    private int[] resourceCapRows;  // day rows from horizonStart
+    private Supplier<MasterSolver> masterFactory;
+    private DualStabilizer stabilizer;
+    private int maxColumnAge;
+    private int maxPoolSize;
 
     public ColumnGenerationFacility() {
-        varMap = new HashMap<>();
-        resourceCapConstrs = new HashMap<>();
-        testCoverConstrs = new HashMap<>();
-        vehicleCapConstrs = new HashMap<>();
+        this(defaultPricer());
+    }
+
+    public ColumnGenerationFacility(PricerFacility pricer) {
+        this.pricer = pricer;
+        colIdx = new HashMap<>();
+        vehicleCapRows = new HashMap<>();
+        masterFactory = GurobiMaster::new;
+        stabilizer = new NoStabilizer();
+        maxColumnAge = 0;
+        maxPoolSize = Integer.MAX_VALUE;
+    }
+
+    private static PricerFacility defaultPricer() {
+        LabelingPricerFacility pricer = new LabelingPricerFacility();
+        pricer.setMaxColumns(COLUMNS_PER_ITERATION);
+        return pricer;
+    }
+
+    public void setStabilizer(DualStabilizer stabilizer) {
+        this.stabilizer = stabilizer;
+    }
+
+    // see ColumnGeneration.setMasterSolver
+    public void setMasterSolver(Supplier<MasterSolver> masterFactory) {
+        this.masterFactory = masterFactory;
+    }
+
+    // see ColumnGeneration.setColumnPoolLimits
+    public void setColumnPoolLimits(int maxAge, int maxSize) {
+        this.maxColumnAge = maxAge;
+        this.maxPoolSize = maxSize;
     }
 
 
@@ -57,102 +99,178 @@ public class ColumnGenerationFacility implements Algorithm {
         assert colList.size()==uniqColSet.size();
         System.out.println("unique col size: " + uniqColSet.size());
 
-        try {
-            GRBEnv env = new GRBEnv();
-            GRBModel model = buildModel(env, colList);
-            // suppress the log
-            model.getEnv().set(GRB.IntParam.OutputFlag, 0);
+        MasterSolver master = buildModel(masterFactory.get(), colList);
+        ColumnPool<ColumnWithTiming> pool = new ColumnPool<>(maxColumnAge, maxPoolSize);
+        colList.forEach(pool::add);
 
-            // change the variables type
-            for (GRBVar var : varMap.values()) {
-                var.set(GRB.CharAttr.VType, GRB.CONTINUOUS);
-                var.set(GRB.DoubleAttr.UB, GRB.INFINITY);
+        // ================================= Column Generation Loop ================================================
+
+        final int maxIter = 10000;
+        int iterTimes = 0;
+
+        while (iterTimes++ < maxIter) {
+            if (!master.solve()) {
+                System.out.println("Restricted master has no optimal solution");
+                pricer.end();
+                master.end();
+                return;
             }
-            model.update();
-
-            // ================================= Column Generation Loop ================================================
-
-            final int maxIter = 10000;
-            int iterTimes = 0;
-
-            PricerFacility pricer = new CPOPricerFacility();
-            while (iterTimes++ < maxIter) {
-                model.optimize();
-
-                // get dual information
-                Map<Integer, Double> testDual = new HashMap<>();
-                Map<Integer, Double> vehicleDual = new HashMap<>();
-                Map<Integer, Double> dayDual = new HashMap<>();
-                for (int tid : testCoverConstrs.keySet()) {
-                    GRBConstr constr = testCoverConstrs.get(tid);
-                    testDual.put(tid, constr.get(GRB.DoubleAttr.Pi));
-                }
-                for (int release : vehicleCapConstrs.keySet()) {
-                    GRBConstr constr = vehicleCapConstrs.get(release);
-                    vehicleDual.put(release, constr.get(GRB.DoubleAttr.Pi));
-                }
-                for (int d : resourceCapConstrs.keySet()) {
-                    GRBConstr constr = resourceCapConstrs.get(d);
-                    dayDual.put(d, constr.get(GRB.DoubleAttr.Pi));
-                }
-
-                List<ColumnWithTiming> candidates = pricer.price(testDual, vehicleDual, dayDual);
-                System.out.printf("Iteration: %d, Master obj: %.3f, pricing obj: %.3f, # cols: %d, ", iterTimes,
-                        model.get(GRB.DoubleAttr.ObjVal),
-                        pricer.getReducedCost(),
-                        candidates.size());
-                if (candidates.size()==0)
+
+            // get dual information
+            double[] masterDual = getMasterDual(master);
+            Map<Integer, Double> masterTestDual = testDualOf(masterDual);
+            Map<Integer, Double> masterVehicleDual = vehicleDualOf(masterDual);
+            DayDualSnapshot masterDayDual = dayDualOf(masterDual);
+            double masterObj = master.getObjective();
+            // purged columns leave uniqColSet so that they can be priced again
+            uniqColSet.removeAll(pool.purge(master, colIdx, colList));
+
+            // archived columns that price out again come first
+            List<ColumnWithTiming> candidates = pool.reprice(col -> CPOPricerFacility.reducedCost(col,
+                    masterTestDual, masterVehicleDual, masterDayDual));
+            // price at the stabilized duals, keep what also prices out at the master duals
+            double[] dual = candidates.isEmpty() ? stabilizer.stabilize(masterDual) : null;
+            while (dual != null) {
+                List<ColumnWithTiming> priced = pricer.price(testDualOf(dual), vehicleDualOf(dual),
+                        dayDualOf(dual));
+                // an inexact reduced cost overstates the bound and would pin the center
+                if (pricer.isExact())
+                    stabilizer.update(dual, lagrangianBound(dual, pricer.getReducedCost()));
+                priced.stream()
+                        .filter(col -> CPOPricerFacility.reducedCost(col, masterTestDual, masterVehicleDual,
+                                masterDayDual) < -0.001)
+                        .forEach(candidates::add);
+                if (candidates.size() > 0)
                     break;
-                // add the column to master problem
-                int realColNum = 0;
-                for (ColumnWithTiming col : candidates) {
-                    if (uniqColSet.add(col)) {
-                        addOneCol(model, col, GRB.CONTINUOUS);
-                        colList.add(col);
-                        realColNum++;
-                    }
-                }
-                System.out.print("# col added: " + realColNum + "\n");
-                model.update();
+                // mis-pricing, move towards the master duals
+                dual = stabilizer.misprice(masterDual);
             }
+            System.out.printf("Iteration: %d, Master obj: %.3f, pricing obj: %.3f, # cols: %d, # archived: %d, ",
+                    iterTimes,
+                    masterObj,
+                    pricer.getReducedCost(),
+                    candidates.size(),
+                    pool.archiveSize());
+            if (candidates.size()==0)
+                break;
+            // add the column to master problem
+            List<ColumnWithTiming> newCols = candidates.stream().filter(uniqColSet::add)
+                    .collect(Collectors.toList());
+            addCols(master, newCols);
+            colList.addAll(newCols);
+            newCols.forEach(pool::add);
+            System.out.print("# col added: " + newCols.size() + "\n");
+        }
 
-            pricer.end();
+        pricer.end();
+        System.out.println("Column generation iterations: " + Math.min(iterTimes, maxIter));
 
-            // solve the integer version
-            for (GRBVar var : varMap.values()) {
-                var.set(GRB.CharAttr.VType, GRB.BINARY);
-            }
-            model.update();
-            model.getEnv().set(GRB.IntParam.OutputFlag, 1);
-
-            model.optimize();
-
-            if (model.get(GRB.IntAttr.Status) == GRB.OPTIMAL) {
-                List<ColumnWithTiming> usedCols = parseSol(colList);
-                System.out.println("max tardiness: " + usedCols.stream().mapToDouble(ColumnWithTiming::getCost).sum());
-                double tardiness = model.get(GRB.DoubleAttr.ObjVal) - usedCols.size()*Global.VEHICLE_COST;
-                System.out.println("Used vehicles: " + usedCols.size());
-                System.out.println("Tardiness: " + tardiness);
-                System.out.println("Obj val: " + model.get(GRB.DoubleAttr.ObjVal));
-            }
-        } catch (GRBException e) {
-            e.printStackTrace();
+        // the integer solve gets every column generated
+        List<ColumnWithTiming> archived = pool.restoreAll().stream().filter(uniqColSet::add)
+                .collect(Collectors.toList());
+        addCols(master, archived);
+        colList.addAll(archived);
+
+        // solve the integer version
+        if (!master.supportsInteger()) {
+            master.end();
+            master = buildModel(new GurobiMaster(), colList);
+        }
+        master.setInteger(true);
+        master.setVerbose(true);
+
+        if (master.solve()) {
+            List<ColumnWithTiming> usedCols = parseSol(master, colList);
+            System.out.println("max tardiness: " + usedCols.stream().mapToDouble(ColumnWithTiming::getCost).sum());
+            double tardiness = master.getObjective() - usedCols.size()*Global.VEHICLE_COST;
+            System.out.println("Used vehicles: " + usedCols.size());
+            System.out.println("Tardiness: " + tardiness);
+            System.out.println("Obj val: " + master.getObjective());
         }
+        master.end();
     }
 
 
 
-    private List<ColumnWithTiming> parseSol(List<ColumnWithTiming> colList) throws GRBException {
+    private List<ColumnWithTiming> parseSol(MasterSolver master, List<ColumnWithTiming> colList) {
+        int[] handles = colList.stream().mapToInt(colIdx::get).toArray();
+        double[] x = master.getValues(handles);
         List<ColumnWithTiming> result = new ArrayList<>();
-        for (Map.Entry<ColumnWithTiming, GRBVar> entry : this.varMap.entrySet()) {
-            if (entry.getValue().get(GRB.DoubleAttr.X) > 0.5)
-                result.add(entry.getKey());
+        for (int i = 0; i < x.length; i++) {
+            if (x[i] > 0.5)
+                result.add(colList.get(i));
         }
         return result;
     }
 
-    private GRBModel buildModel(GRBEnv env, List<ColumnWithTiming> colList) throws GRBException {
-        GRBModel model = new GRBModel(env);
+    // duals of the test cover rows, the vehicle rows and the facility day rows, in
+    // getTidList, getVehicleReleaseList and day order
+    private double[] getMasterDual(MasterSolver master) {
+        List<Integer> tidList = DataInstance.getInstance().getTidList();
+        List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+        final int horizonStart = DataInstance.getInstance().getHorizonStart();
+        final int horizonEnd = DataInstance.getInstance().getHorizonEnd();
+
+        TestIndex index = TestIndex.get();
+        double[] rowDual = master.getDuals();
+
+        double[] dual = new double[tidList.size() + releaseList.size() + horizonEnd - horizonStart];
+        int i = 0;
+        for (int tid : tidList)
+            dual[i++] = rowDual[testCoverRows[index.indexOf(tid)]];
+        for (int release : releaseList)
+            dual[i++] = rowDual[vehicleCapRows.get(release)];
+        for (int d = horizonStart; d < horizonEnd; d++)
+            dual[i++] = rowDual[resourceCapRows[d - horizonStart]];
+        return dual;
+    }
+
+    private static Map<Integer, Double> testDualOf(double[] dual) {
+        List<Integer> tidList = DataInstance.getInstance().getTidList();
+        Map<Integer, Double> testDual = new HashMap<>();
+        for (int i = 0; i < tidList.size(); i++)
+            testDual.put(tidList.get(i), dual[i]);
+        return testDual;
+    }
+
+    private static Map<Integer, Double> vehicleDualOf(double[] dual) {
+        List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+        int offset = DataInstance.getInstance().getTidList().size();
+        Map<Integer, Double> vehicleDual = new HashMap<>();
+        for (int r = 0; r < releaseList.size(); r++)
+            vehicleDual.put(releaseList.get(r), dual[offset + r]);
+        return vehicleDual;
+    }
+
+    private static DayDualSnapshot dayDualOf(double[] dual) {
+        final int horizonStart = DataInstance.getInstance().getHorizonStart();
+        final int horizonEnd = DataInstance.getInstance().getHorizonEnd();
+        int offset = DataInstance.getInstance().getTidList().size()
+                + DataInstance.getInstance().getVehicleReleaseList().size();
+        return new DayDualSnapshot(Arrays.copyOfRange(dual, offset, offset + horizonEnd - horizonStart));
+    }
+
+    // dual objective plus (number of vehicles) x (most negative reduced cost)
+    private static double lagrangianBound(double[] dual, double minReducedCost) {
+        List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+        int numTests = DataInstance.getInstance().getTidList().size();
+        double bound = 0;
+        int numVehicles = 0;
+        int i = 0;
+        for (; i < numTests; i++)
+            bound += dual[i];
+        for (int release : releaseList) {
+            int num = DataInstance.getInstance().numVehiclesByRelease(release);
+            bound += num * dual[i++];
+            numVehicles += num;
+        }
+        for (; i < dual.length; i++)
+            bound += Global.FACILITY_CAP * dual[i];
+        return bound + numVehicles * Math.min(0, minReducedCost);
+    }
+
+    private MasterSolver buildModel(MasterSolver master, List<ColumnWithTiming> colList) {
+        colIdx.clear();
 
         final int horizonStart = DataInstance.getInstance().getHorizonStart();
         final int horizonEnd = DataInstance.getInstance().getHorizonEnd();
@@ -160,55 +278,67 @@ public class ColumnGenerationFacility implements Algorithm {
         // build constraints first
 
         // test cover constraints
+        TestIndex index = TestIndex.get();
+        testCoverRows = new int[index.size()];
         for (int tid : DataInstance.getInstance().getTidList()) {
-            testCoverConstrs.put(tid, model.addConstr(
-                    new GRBLinExpr(), GRB.GREATER_EQUAL, 1.0, "cover test " + tid));
+            testCoverRows[index.indexOf(tid)] = master.addRow(
+                    MasterSolver.GREATER_EQUAL, 1.0, "cover test " + tid);
         }
 
         // vehicle capacity constraints
         for (int release : DataInstance.getInstance().getVehicleReleaseList()) {
-            vehicleCapConstrs.put(release, model.addConstr(
-                    new GRBLinExpr(), GRB.LESS_EQUAL, DataInstance.getInstance().numVehiclesByRelease(release),
+            vehicleCapRows.put(release, master.addRow(
+                    MasterSolver.LESS_EQUAL, DataInstance.getInstance().numVehiclesByRelease(release),
                     "vehicle capacity " + release
             ));
         }
 
         // day resource capacity constraints
+        resourceCapRows = new int[horizonEnd - horizonStart];
         for (int d = horizonStart; d < horizonEnd; d++) {
-            resourceCapConstrs.put(d, model.addConstr(
-                    new GRBLinExpr(), GRB.LESS_EQUAL, Global.FACILITY_CAP,
+            resourceCapRows[d - horizonStart] = master.addRow(
+                    MasterSolver.LESS_EQUAL, Global.FACILITY_CAP,
                     "facility capacity " + d
-            ));
+            );
         }
 
-        model.update();
-
         // add variables
+        addCols(master, colList);
+        return master;
+    }
 
-        for (ColumnWithTiming col : colList) {
-            addOneCol(model, col, GRB.BINARY);
-        }
+    // add a batch of columns in one call, see ColumnGeneration.addCols
+    private void addCols(MasterSolver master, List<ColumnWithTiming> cols) {
+        final int numCols = cols.size();
+        if (numCols == 0)
+            return;
+        final int horizonStart = DataInstance.getInstance().getHorizonStart();
+        double[] obj = new double[numCols];
+        int[][] rows = new int[numCols][];
+        String[] names = Global.DEBUG_NAMES ? new String[numCols] : null;
+
+        for (int i = 0; i < numCols; i++) {
+            ColumnWithTiming col = cols.get(i);
+            int[] seq = col.getSeqIdx();
+            int[] crashIntervals = col.getCrashIntervals();
+            rows[i] = new int[1 + seq.length + col.numCrashDays()];
+            int k = 0;
+            rows[i][k++] = vehicleCapRows.get(col.getRelease());
+            for (int idx : seq)
+                rows[i][k++] = testCoverRows[idx];
+            for (int j = 0; j < crashIntervals.length; j += 2) {
+                for (int d = crashIntervals[j]; d < crashIntervals[j + 1]; d++)
+                    rows[i][k++] = resourceCapRows[d - horizonStart];
+            }
 
-        model.update();
-        return model;
-    }
+            obj[i] = col.getCost() + Global.VEHICLE_COST;
+            if (names != null)
+                names[i] = "use col " + col.getSeq();
+        }
 
-    private void addOneCol(GRBModel model, ColumnWithTiming col, char vtype) throws GRBException {
-        GRBColumn grbColumn = new GRBColumn();
-        GRBConstr vConstr = vehicleCapConstrs.get(col.getRelease());
-        grbColumn.addTerm(1, vConstr);
-
-        col.getSeq().forEach(tid -> grbColumn.addTerm(1, testCoverConstrs.get(tid)));
-        col.daysHasCrash().forEach(d -> grbColumn.addTerm(1, resourceCapConstrs.get(d)));
-        GRBVar v;
-        if (vtype == GRB.BINARY)
-            v = model.addVar(0, 1, col.getCost() + Global.VEHICLE_COST,
-                    GRB.BINARY, grbColumn, "use col " + col.getSeq());
-        else
-            v = model.addVar(0, GRB.INFINITY, col.getCost() + Global.VEHICLE_COST,
-                    GRB.CONTINUOUS, grbColumn, "use col " + col.getSeq());
-
-        varMap.put(col, v);
+        int[] handles = master.addColumns(obj, rows, names);
+        for (int i = 0; i < numCols; i++)
+            colIdx.put(cols.get(i), handles[i]);
     }
 
 
@@ -1,8 +1,8 @@
 package facility;
 
 import algorithm.Column;
-import data.DataInstance;
 import data.TestRequest;
+import utils.TestIndex;
 
 import java.util.*;
 
@@ -12,89 +12,134 @@ import java.util.*;
  */
 public class ColumnWithTiming extends Column {
 
-    private final Map<Integer, Integer> startTimeMap;
-    private final Set<Integer> resourceSet;
+    private final int[] startTimes;     // start day by position in the sequence
+    private final int[] crashIntervals; // disjoint [from, to) day ranges, sorted, flattened
+    private final long timingKey; // key of the base column extended with the start times
 
     public ColumnWithTiming(List<Integer> seq, int release) {
-        super(seq, release);
-        // use default timing options
-        this.startTimeMap = defaultStartTime();
-        this.resourceSet = resourceBasedOnStart();
-        this.cost = calacColCost();
+        this(TestIndex.get().toIndices(seq), release, null);
     }
 
     public ColumnWithTiming(List<Integer> seq, int release, Map<Integer, Integer> startTimeMap) {
-        super(seq, release);
-        this.startTimeMap = startTimeMap;
-        this.resourceSet = resourceBasedOnStart();
+        this(TestIndex.get().toIndices(seq), release, startTimesOf(seq, startTimeMap));
+    }
+
+    // start times by position, null for the default timing; both arrays are kept as is
+    public ColumnWithTiming(int[] seqIdx, int release, int[] startTimes) {
+        super(seqIdx, release, 0);
+        this.startTimes = startTimes != null ? startTimes : defaultStartTime();
+        this.crashIntervals = crashIntervalsOf();
         this.cost = calacColCost();
+        this.timingKey = calcTimingKey();
+    }
+
+    private static int[] startTimesOf(List<Integer> seq, Map<Integer, Integer> startTimeMap) {
+        int[] startTimes = new int[seq.size()];
+        for (int p = 0; p < startTimes.length; p++)
+            startTimes[p] = startTimeMap.get(seq.get(p));
+        return startTimes;
     }
 
-    private Map<Integer, Integer> defaultStartTime() {
-        Map<Integer, Integer> startTimeMap = new HashMap<>();
+    private long calcTimingKey() {
+        long h = this.key;
+        for (int start : startTimes)
+            h = mix(h, start);
+        return h;
+    }
+
+    private int[] defaultStartTime() {
+        int[] startTimes = new int[seq.length];
         int start = this.release;
-        for (int tid : this.seq) {
-            TestRequest test = DataInstance.getInstance().getTestById(tid);
+        for (int p = 0; p < seq.length; p++) {
+            TestRequest test = TestIndex.get().testAt(seq[p]);
 
             if (start + test.getPrep() < test.getRelease()) {
-                startTimeMap.put(tid, test.getRelease());
+                startTimes[p] = test.getRelease();
                 start = test.getRelease() + test.getTat() + test.getAnalysis();
             } else {
-                startTimeMap.put(tid, start);
+                startTimes[p] = start;
                 start += test.getDur();
             }
         }
-        return startTimeMap;
+        return startTimes;
     }
 
-    private Set<Integer> resourceBasedOnStart() {
-        Set<Integer> resourceSet = new HashSet<>();
-        this.startTimeMap.entrySet().forEach(e -> {
-            int tid = e.getKey();
-            int start = e.getValue();
-            TestRequest test = DataInstance.getInstance().getTestById(tid);
-            int tat_start = start + test.getPrep();
-            int tat_end = start + test.getPrep() + test.getTat();
-            for (int d = tat_start; d < tat_end; d++) {
-                resourceSet.add(d);
+    // the crash windows of all tests, overlapping ones merged
+    private int[] crashIntervalsOf() {
+        int[][] windows = new int[seq.length][];
+        int numWindows = 0;
+        for (int p = 0; p < seq.length; p++) {
+            TestRequest test = TestIndex.get().testAt(seq[p]);
+            if (test.getTat() > 0) {
+                int tatStart = startTimes[p] + test.getPrep();
+                windows[numWindows++] = new int[]{tatStart, tatStart + test.getTat()};
+            }
+        }
+        Arrays.sort(windows, 0, numWindows, Comparator.comparingInt(w -> w[0]));
+        int[] intervals = new int[2 * numWindows];
+        int size = 0;
+        for (int w = 0; w < numWindows; w++) {
+            if (size > 0 && windows[w][0] <= intervals[size - 1]) {
+                intervals[size - 1] = Math.max(intervals[size - 1], windows[w][1]);
+            } else {
+                intervals[size++] = windows[w][0];
+                intervals[size++] = windows[w][1];
             }
-        });
-        return resourceSet;
+        }
+        return size == intervals.length ? intervals : Arrays.copyOf(intervals, size);
     }
 
-    public List<Integer> daysHasCrash() {
-        return new ArrayList<>(this.resourceSet);
+    // flattened [from, to) pairs of the crash days, shared with the column
+    public int[] getCrashIntervals() {
+        return crashIntervals;
+    }
+
+    public int numCrashDays() {
+        int num = 0;
+        for (int i = 0; i < crashIntervals.length; i += 2)
+            num += crashIntervals[i + 1] - crashIntervals[i];
+        return num;
     }
 
     private double calacColCost() {
         // compute the column cost based on start time of tests
-        return this.seq.stream().mapToInt(tid -> Math.max(startTimeMap.get(tid)
-                + DataInstance.getInstance().getTestById(tid).getDur()
-                - DataInstance.getInstance().getTestById(tid).getDeadline(), 0))
-                .sum();
+        double cost = 0;
+        for (int p = 0; p < seq.length; p++) {
+            TestRequest test = TestIndex.get().testAt(seq[p]);
+            cost += Math.max(startTimes[p] + test.getDur() - test.getDeadline(), 0);
+        }
+        return cost;
+    }
 
+    // start day of the test at the given position
+    public int getStartTime(int position) {
+        return startTimes[position];
     }
 
     public int getStartTimeByTid(int tid) {
-        return startTimeMap.get(tid);
+        int idx = TestIndex.get().indexOf(tid);
+        for (int p = 0; p < seq.length; p++) {
+            if (seq[p] == idx)
+                return startTimes[p];
+        }
+        throw new IllegalArgumentException("Test " + tid + " is not in the column");
     }
 
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
 
         ColumnWithTiming that = (ColumnWithTiming) o;
 
-        return startTimeMap.equals(that.startTimeMap);
+        if (timingKey != that.timingKey) return false;
+        if (!super.equals(o)) return false;
+        return Arrays.equals(startTimes, that.startTimes);
 
     }
 
     @Override
     public int hashCode() {
-        int result = super.hashCode();
-        result = 31 * result + startTimeMap.hashCode();
-        return result;
+        return (int) (timingKey ^ (timingKey >>> 32));
     }
 }
@@ -0,0 +1,63 @@
+package facility;
+
+import data.DataInstance;
+import data.TestRequest;
+
+import java.util.Map;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * The day-capacity duals of one pricing round as an array by day with
+ * prefix sums, so the duals of any crash window cost O(1). Built once per
+ * round and shared by the facility pricers, the timing oracle and the
+ * reduced cost checks. Days without a capacity row have a zero dual.
+ */
+public class DayDualSnapshot {
+
+    private final int horizonStart;
+    private final double[] dual;       // by day - horizonStart
+    private final double[] penaltySum; // penaltySum[k]: negated duals of the days before horizonStart + k
+
+    public DayDualSnapshot(Map<Integer, Double> dayDual) {
+        this.horizonStart = DataInstance.getInstance().getHorizonStart();
+        this.dual = new double[DataInstance.getInstance().getHorizonEnd() - horizonStart + 1];
+        for (int k = 0; k < dual.length; k++)
+            dual[k] = dayDual.getOrDefault(k + horizonStart, 0.0);
+        this.penaltySum = prefixSums(dual);
+    }
+
+    // duals of the consecutive days from horizonStart
+    public DayDualSnapshot(double[] dayDual) {
+        this.horizonStart = DataInstance.getInstance().getHorizonStart();
+        this.dual = new double[DataInstance.getInstance().getHorizonEnd() - horizonStart + 1];
+        System.arraycopy(dayDual, 0, dual, 0, Math.min(dayDual.length, dual.length));
+        this.penaltySum = prefixSums(dual);
+    }
+
+    private static double[] prefixSums(double[] dual) {
+        double[] sum = new double[dual.length + 1];
+        for (int k = 0; k < dual.length; k++)
+            sum[k + 1] = sum[k] - dual[k];
+        return sum;
+    }
+
+    public double getDual(int day) {
+        int k = day - horizonStart;
+        return k >= 0 && k < dual.length ? dual[k] : 0;
+    }
+
+    // negated duals of the days in [from, to)
+    public double penalty(int from, int to) {
+        int lo = Math.max(0, Math.min(from - horizonStart, dual.length));
+        int hi = Math.max(lo, Math.min(to - horizonStart, dual.length));
+        return penaltySum[hi] - penaltySum[lo];
+    }
+
+    // negated duals of the crash window of the test started on the given day
+    public double crashPenalty(TestRequest test, int start) {
+        int tatStart = start + test.getPrep();
+        return penalty(tatStart, tatStart + test.getTat());
+    }
+}
@@ -0,0 +1,74 @@
+package facility;
+
+import data.DataInstance;
+import data.TestRequest;
+import utils.TestIndex;
+
+import java.util.List;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Best start times of a fixed sequence on a fixed release. The test and
+ * vehicle duals do not depend on the timing, so the start days only trade
+ * tardiness against the day-capacity duals of the crash windows. Solved by a
+ * DP over (position, start day) with a running minimum over the finish of
+ * the previous test, in O(length x horizon) given the prefix sums of
+ * DayDualSnapshot. A test may only start if its crash window ends by
+ * horizonEnd, the last day with a capacity row in the master.
+ */
+public class TimingOptimizer {
+
+    private TimingOptimizer() {
+    }
+
+    // the column with the cheapest timing, null if the sequence cannot fit within the horizon
+    public static ColumnWithTiming bestTiming(List<Integer> seq, int release, DayDualSnapshot dayDual) {
+        final int horizonStart = DataInstance.getInstance().getHorizonStart();
+        final int horizonEnd = DataInstance.getInstance().getHorizonEnd();
+        final int numDays = horizonEnd - horizonStart + 1;
+        final int seqLength = seq.size();
+
+        // best[p][k]: cheapest timing of positions 0..p with test p starting on day k,
+        // prefixArg[p][k]: the start day <= k where best[p] is smallest, -1 if none
+        double[][] best = new double[seqLength][numDays];
+        int[][] prefixArg = new int[seqLength][numDays];
+        for (int p = 0; p < seqLength; p++) {
+            TestRequest test = DataInstance.getInstance().getTestById(seq.get(p));
+            int earliest = Math.max(test.getRelease() - test.getPrep(), p == 0 ? release : horizonStart);
+            int latest = horizonEnd - test.getPrep() - test.getTat();
+            int prevDur = p == 0 ? 0 : DataInstance.getInstance().getTestById(seq.get(p - 1)).getDur();
+            int arg = -1;
+            for (int k = 0; k < numDays; k++) {
+                int start = k + horizonStart;
+                // latest start of the previous test that is done by now
+                int prevK = k - prevDur;
+                boolean feasible = start >= earliest && start <= latest && (p == 0 || (prevK >= 0 && prefixArg[p - 1][prevK] >= 0));
+                best[p][k] = Double.MAX_VALUE;
+                if (feasible) {
+                    double prevCost = p == 0 ? 0 : best[p - 1][prefixArg[p - 1][prevK]];
+                    best[p][k] = prevCost + Math.max(0, start + test.getDur() - test.getDeadline())
+                            + dayDual.crashPenalty(test, start);
+                }
+                if (best[p][k] < Double.MAX_VALUE && (arg < 0 || best[p][k] < best[p][arg]))
+                    arg = k;
+                prefixArg[p][k] = arg;
+            }
+        }
+
+        int k = seqLength == 0 ? -1 : prefixArg[seqLength - 1][numDays - 1];
+        if (k < 0)
+            return null;
+        // walk back through the running minima
+        int[] startTimes = new int[seqLength];
+        for (int p = seqLength - 1; p >= 0; p--) {
+            int start = k + horizonStart;
+            startTimes[p] = start;
+            if (p > 0)
+                k = prefixArg[p - 1][start - DataInstance.getInstance().getTestById(seq.get(p - 1)).getDur()
+                        - horizonStart];
+        }
+        return new ColumnWithTiming(TestIndex.get().toIndices(seq), release, startTimes);
+    }
+}
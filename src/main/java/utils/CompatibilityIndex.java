@@ -0,0 +1,137 @@
+package utils;
+
+import data.DataInstance;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Successor and predecessor bitsets over the dense test indices of TestIndex,
+ * built once per DataInstance from getRelation. Test j can be appended to a
+ * sequence iff j is not in it and every test of the sequence has j as successor.
+ */
+public class CompatibilityIndex {
+
+    private static volatile CompatibilityIndex current;
+
+    private final DataInstance instance;
+    private final int numTests;
+    private final int numWords;
+    private final long[][] successors;   // successors[i]: tests that may follow test i
+    private final long[][] predecessors; // predecessors[j]: tests that test j may follow
+    private final long[] allTests;
+
+    private CompatibilityIndex(DataInstance instance) {
+        this.instance = instance;
+        TestIndex index = TestIndex.get();
+        this.numTests = index.size();
+        this.numWords = (numTests + 63) >>> 6;
+        this.successors = new long[numTests][numWords];
+        this.predecessors = new long[numTests][numWords];
+        this.allTests = new long[numWords];
+
+        for (int i = 0; i < numTests; i++) {
+            set(allTests, i);
+            for (int j = 0; j < numTests; j++) {
+                if (i != j && instance.getRelation(index.tidAt(i), index.tidAt(j))) {
+                    set(successors[i], j);
+                    set(predecessors[j], i);
+                }
+            }
+        }
+    }
+
+    public static CompatibilityIndex get() {
+        CompatibilityIndex index = current;
+        DataInstance instance = DataInstance.getInstance();
+        if (index == null || index.instance != instance) {
+            synchronized (CompatibilityIndex.class) {
+                index = current;
+                if (index == null || index.instance != instance) {
+                    index = new CompatibilityIndex(instance);
+                    current = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    public int numWords() {
+        return numWords;
+    }
+
+    public boolean canFollow(int i, int j) {
+        return contains(successors[i], j);
+    }
+
+    // shared arrays, do not modify
+    public long[] successors(int i) {
+        return successors[i];
+    }
+
+    public long[] predecessors(int j) {
+        return predecessors[j];
+    }
+
+    // tests that can be appended to the first len tests of seq, written into out
+    public void followers(int[] seq, int len, long[] out) {
+        System.arraycopy(allTests, 0, out, 0, numWords);
+        for (int p = 0; p < len; p++) {
+            long[] succ = successors[seq[p]];
+            for (int w = 0; w < numWords; w++)
+                out[w] &= succ[w];
+        }
+        for (int p = 0; p < len; p++)
+            clear(out, seq[p]);
+    }
+
+    public long[] followers(int[] seq) {
+        long[] out = new long[numWords];
+        followers(seq, seq.length, out);
+        return out;
+    }
+
+    // followers of seq + test j, given the followers of seq
+    public void extend(long[] seqFollowers, int j, long[] out) {
+        long[] succ = successors[j];
+        for (int w = 0; w < numWords; w++)
+            out[w] = seqFollowers[w] & succ[w];
+        clear(out, j);
+    }
+
+    public static boolean contains(long[] bits, int idx) {
+        return (bits[idx >>> 6] & (1L << idx)) != 0;
+    }
+
+    public static void set(long[] bits, int idx) {
+        bits[idx >>> 6] |= 1L << idx;
+    }
+
+    public static void clear(long[] bits, int idx) {
+        bits[idx >>> 6] &= ~(1L << idx);
+    }
+
+    // next set bit at or after from, -1 if none
+    public static int nextSetBit(long[] bits, int from) {
+        int w = from >>> 6;
+        if (w >= bits.length)
+            return -1;
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == bits.length)
+                return -1;
+            word = bits[w];
+        }
+    }
+
+    // whether every bit of a is also set in b
+    public static boolean isSubset(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            if ((a[w] & ~b[w]) != 0)
+                return false;
+        }
+        return true;
+    }
+}
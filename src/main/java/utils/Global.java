@@ -8,4 +8,6 @@ public class Global {
     public static final double VEHICLE_COST = 500;
     public static final int MAX_HITS = 4;
     public static final int FACILITY_CAP = 4;
+    // name master variables after their sequence, -DdebugNames=true
+    public static final boolean DEBUG_NAMES = Boolean.getBoolean("debugNames");
 }
@@ -0,0 +1,110 @@
+package utils;
+
+import data.DataInstance;
+import data.TestRequest;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ *
+ * Dense 0..n-1 numbering of the tests of the current DataInstance, in the
+ * order of getTidList(). Rebuilt whenever DataInstance.init switches instance.
+ */
+public class TestIndex {
+
+    private static volatile TestIndex current;
+
+    private final DataInstance instance;
+    private final int[] tidArr;
+    private final TestRequest[] testArr;
+    private final int minTid;
+    private final int[] idxByTid; // offset by minTid, -1 for unknown tids
+
+    private TestIndex(DataInstance instance) {
+        this.instance = instance;
+        this.tidArr = instance.getTidList().stream().mapToInt(Integer::intValue).toArray();
+        this.testArr = new TestRequest[tidArr.length];
+
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int tid : tidArr) {
+            min = Math.min(min, tid);
+            max = Math.max(max, tid);
+        }
+        this.minTid = tidArr.length == 0 ? 0 : min;
+        this.idxByTid = new int[tidArr.length == 0 ? 0 : max - min + 1];
+        Arrays.fill(idxByTid, -1);
+        for (int i = 0; i < tidArr.length; i++) {
+            idxByTid[tidArr[i] - minTid] = i;
+            testArr[i] = instance.getTestById(tidArr[i]);
+        }
+    }
+
+    public static TestIndex get() {
+        TestIndex index = current;
+        DataInstance instance = DataInstance.getInstance();
+        if (index == null || index.instance != instance) {
+            synchronized (TestIndex.class) {
+                index = current;
+                if (index == null || index.instance != instance) {
+                    index = new TestIndex(instance);
+                    current = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    public int size() {
+        return tidArr.length;
+    }
+
+    public int indexOf(int tid) {
+        int offset = tid - minTid;
+        if (offset < 0 || offset >= idxByTid.length || idxByTid[offset] < 0)
+            throw new IllegalArgumentException("Unknown test id " + tid);
+        return idxByTid[offset];
+    }
+
+    public int tidAt(int idx) {
+        return tidArr[idx];
+    }
+
+    public TestRequest testAt(int idx) {
+        return testArr[idx];
+    }
+
+    public int[] toIndices(List<Integer> seq) {
+        int[] result = new int[seq.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = indexOf(seq.get(i));
+        return result;
+    }
+
+    // read-only view of dense indices as test ids
+    public List<Integer> asTidList(int[] seqIdx) {
+        return new TidList(seqIdx);
+    }
+
+    private class TidList extends AbstractList<Integer> implements RandomAccess {
+        private final int[] seqIdx;
+
+        private TidList(int[] seqIdx) {
+            this.seqIdx = seqIdx;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return tidArr[seqIdx[index]];
+        }
+
+        @Override
+        public int size() {
+            return seqIdx.length;
+        }
+    }
+}
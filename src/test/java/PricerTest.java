@@ -0,0 +1,500 @@
+import algorithm.Column;
+import algorithm.ColumnGeneration;
+import algorithm.branching.BranchingRule;
+import algorithm.branching.PairRule;
+import algorithm.branching.ReleaseRule;
+import algorithm.pricer.CPOPricer;
+import algorithm.pricer.CPOPricerFacility;
+import algorithm.pricer.CascadePricer;
+import algorithm.pricer.EnumPricer;
+import algorithm.pricer.HeuristicPricer;
+import algorithm.pricer.LabelingPricer;
+import algorithm.pricer.LabelingPricerFacility;
+import algorithm.pricer.PortfolioPricer;
+import algorithm.pricer.Pricer;
+import algorithm.pricer.ReleaseSplitPricer;
+import data.DataInstance;
+import data.Reader;
+import data.TestRequest;
+import facility.ColumnWithTiming;
+import facility.DayDualSnapshot;
+import facility.TimingOptimizer;
+import org.junit.Ignore;
+import org.junit.Test;
+import utils.CompatibilityIndex;
+import utils.Global;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ */
+public class PricerTest {
+
+    private final String filepath = "./data/158 - orig.tp3s";
+
+    private static Map<Integer, Double> randomTestDual(Random rnd) {
+        Map<Integer, Double> testDual = new HashMap<>();
+        DataInstance.getInstance().getTidList().forEach(tid -> testDual.put(tid, rnd.nextDouble() * 300));
+        return testDual;
+    }
+
+    private static Map<Integer, Double> randomVehicleDual(Random rnd) {
+        Map<Integer, Double> vehicleDual = new HashMap<>();
+        DataInstance.getInstance().getVehicleReleaseList().forEach(r -> vehicleDual.put(r, -rnd.nextDouble() * 50));
+        return vehicleDual;
+    }
+
+    private static DayDualSnapshot randomDayDual(Random rnd) {
+        double[] dayDual = new double[DataInstance.getInstance().getHorizonEnd()
+                - DataInstance.getInstance().getHorizonStart()];
+        for (int d = 0; d < dayDual.length; d++)
+            dayDual[d] = -rnd.nextDouble() * 20;
+        return new DayDualSnapshot(dayDual);
+    }
+
+    @Test
+    public void labelingMatchesEnumeration() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        Pricer enumPricer = new EnumPricer();
+        Pricer labelingPricer = new LabelingPricer();
+        Random rnd = new Random(0);
+
+        for (int i = 0; i < 20; i++) {
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+
+            List<Column> enumCols = enumPricer.price(testDual, vehicleDual);
+            List<Column> labelingCols = labelingPricer.price(testDual, vehicleDual);
+
+            assert enumCols.size() == labelingCols.size();
+            assert Math.abs(enumPricer.getReducedCost() - labelingPricer.getReducedCost()) < 1e-6;
+            for (Column col : labelingCols) {
+                assert EnumPricer.reducedCost(col, testDual, vehicleDual) < -0.001;
+            }
+        }
+    }
+
+    // the labeling bound must equal the minimum over every sequence of up to Global.MAX_HITS tests
+    @Test
+    public void labelingBoundMatchesFullEnumeration() {
+        Reader jsonReader = new Reader("./data/157 - relax.tp3s");
+        DataInstance.init(jsonReader);
+
+        Pricer enumPricer = new EnumPricer(Global.MAX_HITS);
+        Pricer labelingPricer = new LabelingPricer();
+        Random rnd = new Random(0);
+
+        for (int i = 0; i < 300; i++) {
+            double scale = 50 + rnd.nextDouble() * 400;
+            Map<Integer, Double> testDual = new HashMap<>();
+            DataInstance.getInstance().getTidList().forEach(tid -> testDual.put(tid, rnd.nextDouble() * scale));
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+
+            enumPricer.price(testDual, vehicleDual);
+            labelingPricer.price(testDual, vehicleDual);
+            assert labelingPricer.isExact();
+            if (enumPricer.getReducedCost() < Double.MAX_VALUE)
+                assert Math.abs(enumPricer.getReducedCost() - labelingPricer.getReducedCost()) < 1e-6;
+        }
+    }
+
+    @Test
+    public void multipleColumnsPerCall() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        final int k = 10;
+        Pricer enumPricer = new EnumPricer();
+        Pricer labelingPricer = new LabelingPricer();
+        enumPricer.setMaxColumns(k);
+        labelingPricer.setMaxColumns(k);
+        Random rnd = new Random(1);
+
+        for (int i = 0; i < 20; i++) {
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+
+            for (Pricer pricer : new Pricer[]{enumPricer, labelingPricer}) {
+                List<Column> cols = pricer.price(testDual, vehicleDual);
+                assert cols.size() <= k;
+                assert new HashSet<>(cols).size() == cols.size();
+                for (Column col : cols) {
+                    assert EnumPricer.reducedCost(col, testDual, vehicleDual) < -0.001;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void partialPricingFallsBackToFullScan() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        EnumPricer fullPricer = new EnumPricer();
+        EnumPricer partialPricer = new EnumPricer();
+        partialPricer.setPartialPricing(5);
+        partialPricer.setMaxColumns(3);
+        Random rnd = new Random(2);
+
+        for (int i = 0; i < 40; i++) {
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+
+            List<Column> fullCols = fullPricer.price(testDual, vehicleDual);
+            List<Column> partialCols = partialPricer.price(testDual, vehicleDual);
+            assert fullCols.isEmpty() == partialCols.isEmpty();
+            // a partial round that found columns has not seen the whole pool
+            assert fullPricer.isExact();
+            assert partialPricer.isExact() || !partialCols.isEmpty();
+            if (partialPricer.isExact())
+                assert Math.abs(fullPricer.getReducedCost() - partialPricer.getReducedCost()) < 1e-6;
+            for (Column col : partialCols) {
+                assert EnumPricer.reducedCost(col, testDual, vehicleDual) < -0.001;
+            }
+        }
+    }
+
+    @Test
+    public void branchingRulesRespected() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        Pricer enumPricer = new EnumPricer();
+        Pricer labelingPricer = new LabelingPricer();
+        enumPricer.setMaxColumns(5);
+        labelingPricer.setMaxColumns(5);
+        final int numTests = DataInstance.getInstance().getTidList().size();
+        final List<Integer> releaseList = DataInstance.getInstance().getVehicleReleaseList();
+        Random rnd = new Random(3);
+
+        for (int i = 0; i < 40; i++) {
+            List<BranchingRule> rules = new ArrayList<>();
+            for (int k = 0; k < 3; k++) {
+                int first = rnd.nextInt(numTests);
+                int second = (first + 1 + rnd.nextInt(numTests - 1)) % numTests;
+                rules.add(new PairRule(first, second, rnd.nextBoolean()));
+            }
+            rules.add(new ReleaseRule(rnd.nextInt(numTests), releaseList.get(rnd.nextInt(releaseList.size())),
+                    rnd.nextBoolean()));
+            enumPricer.setBranchingRules(rules);
+            labelingPricer.setBranchingRules(rules);
+
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+            List<Column> enumCols = enumPricer.price(testDual, vehicleDual);
+            List<Column> labelingCols = labelingPricer.price(testDual, vehicleDual);
+
+            assert enumCols.isEmpty() == labelingCols.isEmpty();
+            if (!enumCols.isEmpty())
+                assert Math.abs(enumPricer.getReducedCost() - labelingPricer.getReducedCost()) < 1e-6;
+            for (Pricer pricer : new Pricer[]{enumPricer, labelingPricer}) {
+                for (Column col : pricer == enumPricer ? enumCols : labelingCols) {
+                    for (BranchingRule rule : rules)
+                        assert rule.allows(col.getSeqIdx(), col.getRelease());
+                }
+            }
+        }
+    }
+
+    // together(c, d) where [d, x, c] is the only order of c, d and x, and y goes with x and c but never
+    // with d. The label [y, x] beats [d, x] on every resource, yet appending c to it requires d, so the
+    // best column [d, x, c] is lost if it dominates [d, x]
+    @Test
+    public void togetherRuleBlocksDominance() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        CompatibilityIndex compIndex = CompatibilityIndex.get();
+        final List<Integer> tidList = DataInstance.getInstance().getTidList();
+        final int numTests = tidList.size();
+        int[] scenario = null;
+        for (int release : DataInstance.getInstance().getVehicleReleaseList()) {
+            for (int d = 0; d < numTests && scenario == null; d++) {
+                for (int x = 0; x < numTests && scenario == null; x++) {
+                    if (x == d || !compIndex.canFollow(d, x) || compIndex.canFollow(x, d))
+                        continue;
+                    for (int c = 0; c < numTests && scenario == null; c++) {
+                        if (c == d || c == x || !compIndex.canFollow(d, c) || !compIndex.canFollow(x, c)
+                                || compIndex.canFollow(c, d) || compIndex.canFollow(c, x))
+                            continue;
+                        for (int y = 0; y < numTests && scenario == null; y++) {
+                            if (y == d || y == x || y == c || !compIndex.canFollow(y, x)
+                                    || compIndex.canFollow(y, d) || compIndex.canFollow(d, y)
+                                    || finish(release, y, x) > finish(release, d, x)
+                                    || !CompatibilityIndex.isSubset(compIndex.followers(new int[]{d, x}),
+                                    compIndex.followers(new int[]{y, x})))
+                                continue;
+                            scenario = new int[]{release, c, d, x, y};
+                        }
+                    }
+                }
+            }
+        }
+        assert scenario != null;
+
+        // only c, d, x and y carry a dual, large enough that 3 of them beat any tardiness
+        final double bigDual = 10000;
+        Map<Integer, Double> testDual = new HashMap<>();
+        tidList.forEach(tid -> testDual.put(tid, 0.0));
+        testDual.put(tidList.get(scenario[1]), bigDual);
+        testDual.put(tidList.get(scenario[2]), bigDual);
+        testDual.put(tidList.get(scenario[3]), bigDual);
+        testDual.put(tidList.get(scenario[4]), 1.5 * bigDual);
+        // the other releases cannot compete
+        final int release = scenario[0];
+        Map<Integer, Double> vehicleDual = new HashMap<>();
+        DataInstance.getInstance().getVehicleReleaseList()
+                .forEach(r -> vehicleDual.put(r, r == release ? 0 : -10 * bigDual));
+
+        List<BranchingRule> rules = new ArrayList<>();
+        rules.add(new PairRule(scenario[1], scenario[2], true));
+        Pricer enumPricer = new EnumPricer(Global.MAX_HITS);
+        Pricer labelingPricer = new LabelingPricer();
+        enumPricer.setBranchingRules(rules);
+        labelingPricer.setBranchingRules(rules);
+        enumPricer.price(testDual, vehicleDual);
+        List<Column> cols = labelingPricer.price(testDual, vehicleDual);
+
+        assert labelingPricer.isExact();
+        assert Math.abs(enumPricer.getReducedCost() - labelingPricer.getReducedCost()) < 1e-6;
+        assert cols.get(0).getSeqIdx().length == 3;
+    }
+
+    // finish of the tests run in order from the release, same rule as Column
+    private static int finish(int release, int... seq) {
+        final List<Integer> tidList = DataInstance.getInstance().getTidList();
+        int time = release;
+        for (int idx : seq) {
+            TestRequest test = DataInstance.getInstance().getTestById(tidList.get(idx));
+            if (time + test.getPrep() < test.getRelease())
+                time = test.getRelease() + test.getTat() + test.getAnalysis();
+            else
+                time += test.getDur();
+        }
+        return time;
+    }
+
+    @Test
+    public void portfolioReturnsWinnerOrExactBound() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        Pricer exactPricer = new LabelingPricer();
+        PortfolioPricer portfolio = new PortfolioPricer(new EnumPricer(2), new LabelingPricer());
+        portfolio.setMaxColumns(5);
+        Random rnd = new Random(4);
+
+        for (int i = 0; i < 20; i++) {
+            // every other round the duals are too small for any column to price out
+            double scale = i % 2 == 0 ? 1 : 0.01;
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            testDual.replaceAll((tid, dual) -> dual * scale);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+
+            List<Column> cols = portfolio.price(testDual, vehicleDual);
+            exactPricer.price(testDual, vehicleDual);
+            assert cols.size() <= 5;
+            for (Column col : cols)
+                assert EnumPricer.reducedCost(col, testDual, vehicleDual) < -0.001;
+            if (cols.isEmpty()) {
+                assert portfolio.getLastWinner() == -1;
+                assert portfolio.isExact();
+                assert Math.abs(portfolio.getReducedCost() - exactPricer.getReducedCost()) < 1e-6;
+            } else {
+                assert portfolio.getLastWinner() >= 0;
+                assert portfolio.getReducedCost() >= exactPricer.getReducedCost() - 1e-6;
+            }
+        }
+        portfolio.end();
+    }
+
+    @Test
+    public void cascadeFallsBackToExactPricer() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        Pricer exactPricer = new LabelingPricer();
+        CascadePricer cascade = new CascadePricer(new HeuristicPricer(), new LabelingPricer());
+        cascade.setMaxColumns(5);
+        Random rnd = new Random(5);
+
+        for (int i = 0; i < 20; i++) {
+            double scale = i % 2 == 0 ? 1 : 0.01;
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            testDual.replaceAll((tid, dual) -> dual * scale);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+
+            List<Column> cols = cascade.price(testDual, vehicleDual);
+            exactPricer.price(testDual, vehicleDual);
+            for (Column col : cols)
+                assert EnumPricer.reducedCost(col, testDual, vehicleDual) < -0.001;
+            // only an exact empty round may end column generation
+            assert cols.isEmpty() == (exactPricer.getReducedCost() >= -0.001);
+            if (cols.isEmpty())
+                assert cascade.isExact();
+        }
+        int[] numCalls = cascade.getNumCalls();
+        assert numCalls[0] == 20;
+        assert numCalls[1] < 20;
+    }
+
+    @Test
+    public void releaseSplitMatchesSinglePricer() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        Pricer labelingPricer = new LabelingPricer();
+        Pricer splitPricer = new ReleaseSplitPricer(LabelingPricer::new, 2);
+        labelingPricer.setMaxColumns(5);
+        splitPricer.setMaxColumns(5);
+        Random rnd = new Random(6);
+
+        for (int i = 0; i < 20; i++) {
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+
+            List<Column> cols = labelingPricer.price(testDual, vehicleDual);
+            List<Column> splitCols = splitPricer.price(testDual, vehicleDual);
+            assert cols.size() == splitCols.size();
+            assert splitPricer.isExact();
+            assert Math.abs(labelingPricer.getReducedCost() - splitPricer.getReducedCost()) < 1e-6;
+            for (Column col : splitCols)
+                assert EnumPricer.reducedCost(col, testDual, vehicleDual) < -0.001;
+        }
+        splitPricer.end();
+    }
+
+    @Test
+    public void facilityLabelingPricesTimedColumns() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        LabelingPricerFacility facilityPricer = new LabelingPricerFacility();
+        Pricer labelingPricer = new LabelingPricer();
+        Random rnd = new Random(8);
+        DayDualSnapshot noDayDual = new DayDualSnapshot(new double[0]);
+
+        for (int i = 0; i < 20; i++) {
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+            DayDualSnapshot dayDual = randomDayDual(rnd);
+
+            // without day duals the earliest start days are optimal
+            labelingPricer.price(testDual, vehicleDual);
+            facilityPricer.price(testDual, vehicleDual, noDayDual);
+            assert Math.abs(labelingPricer.getReducedCost() - facilityPricer.getReducedCost()) < 1e-6;
+
+            facilityPricer.setMaxColumns(1);
+            List<ColumnWithTiming> best = facilityPricer.price(testDual, vehicleDual, dayDual);
+            assert facilityPricer.getReducedCost() >= labelingPricer.getReducedCost() - 1e-6;
+            if (!best.isEmpty())
+                assert Math.abs(CPOPricerFacility.reducedCost(best.get(0), testDual, vehicleDual, dayDual)
+                        - facilityPricer.getReducedCost()) < 1e-6;
+
+            facilityPricer.setMaxColumns(10);
+            for (ColumnWithTiming col : facilityPricer.price(testDual, vehicleDual, dayDual))
+                assert CPOPricerFacility.reducedCost(col, testDual, vehicleDual, dayDual) < -0.001;
+        }
+    }
+
+    @Test
+    public void timedVersionsPruneOnReducedCost() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        Random rnd = new Random(9);
+        Map<Integer, Double> testDual = randomTestDual(rnd);
+        Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+        DayDualSnapshot dayDual = randomDayDual(rnd);
+
+        for (Column col : ColumnGeneration.enumInitCol(Global.MAX_HITS)) {
+            ColumnWithTiming raw = new ColumnWithTiming(col.getSeq(), col.getRelease());
+            Set<ColumnWithTiming> useful = new HashSet<>();
+            CPOPricerFacility.timedVersions(raw, testDual, vehicleDual, dayDual, Double.MAX_VALUE)
+                    .filter(c -> CPOPricerFacility.reducedCost(c, testDual, vehicleDual, dayDual) < -0.001)
+                    .forEach(useful::add);
+            Set<ColumnWithTiming> pruned = new HashSet<>();
+            CPOPricerFacility.timedVersions(raw, testDual, vehicleDual, dayDual, -0.001).forEach(pruned::add);
+            assert useful.equals(pruned);
+        }
+    }
+
+    @Test
+    public void timingOracleMatchesFacilityLabeling() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        List<Column> allCols = ColumnGeneration.enumInitCol(Global.MAX_HITS);
+        LabelingPricerFacility facilityPricer = new LabelingPricerFacility();
+        Random rnd = new Random(10);
+        for (int i = 0; i < 5; i++) {
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+            DayDualSnapshot dayDual = randomDayDual(rnd);
+
+            double best = Double.MAX_VALUE;
+            for (Column col : allCols) {
+                ColumnWithTiming timed = TimingOptimizer.bestTiming(col.getSeq(), col.getRelease(), dayDual);
+                if (timed != null)
+                    best = Math.min(best, CPOPricerFacility.reducedCost(timed, testDual, vehicleDual, dayDual));
+            }
+            facilityPricer.price(testDual, vehicleDual, dayDual);
+            assert Math.abs(best - facilityPricer.getReducedCost()) < 1e-6;
+        }
+    }
+
+    // the CP model is built once, later calls only swap constraints
+    @Test
+    public void cpModelDoesNotGrow() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        CPOPricer cpPricer = new CPOPricer();
+        cpPricer.setMaxColumns(3);
+        Random rnd = new Random(7);
+        int modelSize = 0;
+        for (int i = 0; i < 20; i++) {
+            cpPricer.price(randomTestDual(rnd), randomVehicleDual(rnd));
+            if (i == 0)
+                modelSize = cpPricer.getModelSize();
+            assert cpPricer.getModelSize() == modelSize;
+        }
+        cpPricer.end();
+    }
+
+    // benchmark: the CP model is reused, so later rounds are no slower than early ones
+    @Ignore("wall-clock benchmark")
+    @Test
+    public void cpPricingTimeStaysFlat() {
+        Reader jsonReader = new Reader(filepath);
+        DataInstance.init(jsonReader);
+
+        final int numRounds = 500;
+        final int blockSize = 100;
+        Pricer cpPricer = new CPOPricer();
+        Random rnd = new Random(7);
+        double[] blockMillis = new double[numRounds / blockSize];
+        for (int i = 0; i < numRounds; i++) {
+            Map<Integer, Double> testDual = randomTestDual(rnd);
+            Map<Integer, Double> vehicleDual = randomVehicleDual(rnd);
+            long time = System.nanoTime();
+            cpPricer.price(testDual, vehicleDual);
+            blockMillis[i / blockSize] += (System.nanoTime() - time) / 1e6 / blockSize;
+        }
+        cpPricer.end();
+
+        for (int b = 0; b < blockMillis.length; b++)
+            System.out.printf("rounds %d-%d: %.2f ms per round\n", b * blockSize, (b + 1) * blockSize - 1, blockMillis[b]);
+        assert blockMillis[blockMillis.length - 1] <= 2 * blockMillis[0] + 5;
+    }
+}
@@ -0,0 +1,130 @@
+import algorithm.master.MasterSolver;
+import algorithm.master.SimplexMaster;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Yuhui Shi - University of Michigan
+ * academic use only
+ */
+public class SimplexMasterTest {
+
+    private static final int NUM_TESTS = 40;
+    private static final int NUM_RELEASES = 3;
+    private static final int NUM_VEHICLES = 5;
+
+    // covering rows first, then one vehicle row per release
+    private static int[] randomColumn(Random rnd) {
+        int length = 1 + rnd.nextInt(4);
+        List<Integer> tests = new ArrayList<>();
+        while (tests.size() < length) {
+            int t = rnd.nextInt(NUM_TESTS);
+            if (!tests.contains(t))
+                tests.add(t);
+        }
+        int[] rows = new int[length + 1];
+        for (int i = 0; i < length; i++)
+            rows[i] = tests.get(i);
+        rows[length] = NUM_TESTS + rnd.nextInt(NUM_RELEASES);
+        return rows;
+    }
+
+    private static void addRandomColumns(MasterSolver master, Random rnd, int num, List<Integer> handles,
+                                         List<int[]> rows, List<Double> costs) {
+        double[] obj = new double[num];
+        int[][] colRows = new int[num][];
+        for (int i = 0; i < num; i++) {
+            colRows[i] = randomColumn(rnd);
+            obj[i] = 500 + rnd.nextInt(200) * (colRows[i].length - 1);
+        }
+        for (int handle : master.addColumns(obj, colRows, null))
+            handles.add(handle);
+        for (int i = 0; i < num; i++) {
+            rows.add(colRows[i]);
+            costs.add(obj[i]);
+        }
+    }
+
+    // primal and dual feasibility and equal objectives certify optimality
+    private static void assertOptimal(MasterSolver master, List<Integer> handles, List<int[]> rows,
+                                      List<Double> costs, List<Boolean> alive) {
+        int[] cols = handles.stream().mapToInt(Integer::intValue).toArray();
+        double[] x = master.getValues(cols);
+        double[] rc = master.getReducedCosts(cols);
+        double[] y = master.getDuals();
+
+        double[] activity = new double[NUM_TESTS + NUM_RELEASES];
+        double primal = 0;
+        for (int i = 0; i < cols.length; i++) {
+            if (!alive.get(i))
+                continue;
+            assert x[i] >= -1e-7;
+            assert rc[i] >= -1e-6;
+            for (int row : rows.get(i))
+                activity[row] += x[i];
+            primal += costs.get(i) * x[i];
+        }
+        double dualObj = 0;
+        for (int t = 0; t < NUM_TESTS; t++) {
+            assert activity[t] >= 1 - 1e-7;
+            assert y[t] >= -1e-7;
+            dualObj += y[t];
+        }
+        for (int r = NUM_TESTS; r < NUM_TESTS + NUM_RELEASES; r++) {
+            assert activity[r] <= NUM_VEHICLES + 1e-7;
+            assert y[r] <= 1e-7;
+            dualObj += NUM_VEHICLES * y[r];
+        }
+        assert Math.abs(primal - master.getObjective()) < 1e-6;
+        assert Math.abs(primal - dualObj) < 1e-6 * Math.max(1, primal);
+    }
+
+    @Test
+    public void warmStartStaysOptimal() {
+        Random rnd = new Random(0);
+        MasterSolver master = new SimplexMaster();
+        for (int t = 0; t < NUM_TESTS; t++)
+            master.addRow(MasterSolver.GREATER_EQUAL, 1, null);
+        for (int r = 0; r < NUM_RELEASES; r++)
+            master.addRow(MasterSolver.LESS_EQUAL, NUM_VEHICLES, null);
+
+        List<Integer> handles = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+        List<Double> costs = new ArrayList<>();
+        List<Boolean> alive = new ArrayList<>();
+        addRandomColumns(master, rnd, 300, handles, rows, costs);
+        while (alive.size() < handles.size())
+            alive.add(true);
+
+        for (int round = 0; round < 10; round++) {
+            if (!master.solve()) {
+                // not enough capacity for the columns so far
+                addRandomColumns(master, rnd, 100, handles, rows, costs);
+                while (alive.size() < handles.size())
+                    alive.add(true);
+                continue;
+            }
+            assertOptimal(master, handles, rows, costs, alive);
+
+            // drop some nonbasic columns, add a new batch
+            int[] cols = handles.stream().mapToInt(Integer::intValue).toArray();
+            boolean[] basic = master.isBasic(cols);
+            List<Integer> removed = new ArrayList<>();
+            for (int i = 0; i < cols.length; i++) {
+                if (alive.get(i) && !basic[i] && rnd.nextInt(4) == 0) {
+                    removed.add(cols[i]);
+                    alive.set(i, false);
+                }
+            }
+            master.removeColumns(removed.stream().mapToInt(Integer::intValue).toArray());
+            addRandomColumns(master, rnd, 50, handles, rows, costs);
+            while (alive.size() < handles.size())
+                alive.add(true);
+        }
+        assert master.solve();
+        assertOptimal(master, handles, rows, costs, alive);
+    }
+}